@@ -2,21 +2,235 @@ package com.bw.fsm;
 
 import org.jetbrains.annotations.Nullable;
 
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Wrapper around a java.util.concurrent.BlockingDeque, only here to simulate the "BlockingQueue" of the W3C Algorithm.
+ * Wrapper around a {@link MpscQueue}, only here to simulate the "BlockingQueue" of the W3C Algorithm.<br>
+ * <b>Actual implementation:</b><br>
+ * The queue has any number of producers but only one consumer, the session. {@link #poll()} and {@link #dequeue()}
+ * must only be called by the session.<br>
+ * The queue has two lanes: events put by {@link #enqueue_urgent(Object)} (e.g. the cancellation of the session) are
+ * always dequeued before the normal events, which are dequeued in FIFO order.<br>
+ * The queue can be bounded (see {@link #set_capacity(int, OverflowPolicy, long)}). The bound is applied only to events
+ * offered by other producers ({@link #offer(Object)}). Events of the platform itself ({@link #enqueue(Object)},
+ * e.g. "done.invoke" or delayed sends) share the FIFO order, but are not counted and never dropped or blocked,
+ * as the platform must not lose events.
  */
 public final class BlockingQueue<T> {
 
-    public java.util.concurrent.BlockingDeque<T> data = new LinkedBlockingDeque<>();
+    public final MpscQueue<T> data = new MpscQueue<>();
+
+    /**
+     * The lane for urgent events, always drained first.
+     */
+    public final MpscQueue<T> urgent = new MpscQueue<>();
+
+    /**
+     * Called after each enqueue, if set. Used to schedule pooled sessions (see {@link ExecutionMode#POOLED}).
+     */
+    public volatile Runnable on_enqueue;
+
+    /**
+     * Maximal number of events accepted by {@link #offer(Object)}, 0 for an unbounded queue.
+     */
+    private volatile int capacity;
+    private volatile OverflowPolicy overflow_policy = OverflowPolicy.FAIL;
+    private volatile long block_timeout_ms;
+
+    /**
+     * Serializes the producers of a bounded queue. The consumer needs the lock only to wake up blocked producers.
+     */
+    private final ReentrantLock offer_lock = new ReentrantLock();
+    private final Condition not_full = offer_lock.newCondition();
+    private volatile int waiting_producers;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<BlockingQueue> BOUNDED =
+            AtomicIntegerFieldUpdater.newUpdater(BlockingQueue.class, "bounded");
+
+    /**
+     * Number of events in the normal lane that were added by {@link #offer(Object)}. These elements are marked
+     * in {@link #data}.
+     */
+    private volatile int bounded;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<BlockingQueue> PENDING_DROPS =
+            AtomicIntegerFieldUpdater.newUpdater(BlockingQueue.class, "pending_drops");
+
+    /**
+     * Number of old offered events that the consumer shall discard, see {@link OverflowPolicy#DROP_OLDEST}.
+     * Producers can't remove events from the queue themselves. Events of the platform are skipped.
+     */
+    private volatile int pending_drops;
+
+    // Metrics of the bounded queue, guarded by offer_lock.
+    private int max_depth;
+    private long dropped;
+    private long rejected;
+
+    /**
+     * Sets the bound of the queue. Events that are already in the queue are not affected.
+     *
+     * @param capacity         Maximal number of events, 0 for an unbounded queue.
+     * @param policy           What to do if the queue is full, null for {@link OverflowPolicy#FAIL}.
+     * @param block_timeout_ms Maximal time a producer waits with {@link OverflowPolicy#BLOCK}.
+     */
+    public void set_capacity(int capacity, OverflowPolicy policy, long block_timeout_ms) {
+        this.overflow_policy = policy == null ? OverflowPolicy.FAIL : policy;
+        this.block_timeout_ms = Math.max(0, block_timeout_ms);
+        this.capacity = Math.max(0, capacity);
+    }
+
+    public int get_capacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy get_overflow_policy() {
+        return overflow_policy;
+    }
+
+    public long get_block_timeout() {
+        return block_timeout_ms;
+    }
 
     /***
      * <b>W3C says</b>:<br>
      * Puts e last in the queue
      */
     public void enqueue(T e) {
-        data.add(e);
+        data.offer(e);
+        final Runnable listener = on_enqueue;
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * Puts e last in the urgent lane. Urgent events are dequeued before all normal events and are never
+     * subject to the capacity of the queue.
+     */
+    public void enqueue_urgent(T e) {
+        urgent.offer(e);
+        final Runnable listener = on_enqueue;
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * Puts e last in the queue, if the queue is bounded the {@link OverflowPolicy} is applied.
+     *
+     * @return false if the event was rejected ({@link OverflowPolicy#FAIL} or a timeout with {@link OverflowPolicy#BLOCK}).
+     * A dropped event counts as delivered.
+     */
+    public boolean offer(T e) {
+        final int max = capacity;
+        if (max <= 0) {
+            enqueue(e);
+            return true;
+        }
+        offer_lock.lock();
+        try {
+            if (bounded_size() >= max) {
+                switch (overflow_policy) {
+                    case BLOCK -> {
+                        if (!await_space(max)) {
+                            ++rejected;
+                            return false;
+                        }
+                    }
+                    case FAIL -> {
+                        ++rejected;
+                        return false;
+                    }
+                    case DROP_OLDEST -> {
+                        final int n = bounded_size() - max + 1;
+                        PENDING_DROPS.addAndGet(this, n);
+                        dropped += n;
+                    }
+                    case DROP_NEWEST -> {
+                        ++dropped;
+                        return true;
+                    }
+                }
+            }
+            BOUNDED.incrementAndGet(this);
+            data.offer(e, true);
+            max_depth = Math.max(max_depth, bounded_size());
+        } finally {
+            offer_lock.unlock();
+        }
+        final Runnable listener = on_enqueue;
+        if (listener != null)
+            listener.run();
+        return true;
+    }
+
+    /**
+     * Waits until the queue has space. Called with offer_lock held.
+     */
+    private boolean await_space(int max) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(block_timeout_ms);
+        ++waiting_producers;
+        try {
+            while (bounded_size() >= max) {
+                if (nanos <= 0)
+                    return false;
+                nanos = not_full.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            --waiting_producers;
+        }
+    }
+
+    /**
+     * Wakes up producers that wait for space.
+     */
+    private void signal_not_full() {
+        if (waiting_producers > 0) {
+            offer_lock.lock();
+            try {
+                not_full.signal();
+            } finally {
+                offer_lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Discards the offered element if old events shall be dropped. Called by the consumer.
+     */
+    private boolean drop() {
+        if (pending_drops > 0) {
+            PENDING_DROPS.decrementAndGet(this);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes and returns first element in queue, returns null if queue is empty.
+     */
+    public @Nullable T poll() {
+        T e = urgent.poll();
+        if (e != null)
+            return e;
+        while ((e = data.poll()) != null) {
+            if (!data.last_marked())
+                return e;
+            BOUNDED.decrementAndGet(this);
+            if (!drop()) {
+                signal_not_full();
+                return e;
+            }
+        }
+        return null;
     }
 
     /***
@@ -25,9 +239,71 @@ public final class BlockingQueue<T> {
      */
     public @Nullable T dequeue() {
         try {
-            return data.takeFirst();
+            T e;
+            while ((e = poll()) == null) {
+                data.await(urgent);
+            }
+            return e;
         } catch (InterruptedException ie) {
             return null;
         }
     }
+
+    public boolean isEmpty() {
+        return urgent.isEmpty() && normal_size() == 0;
+    }
+
+    private int normal_size() {
+        return Math.max(0, data.size() - pending_drops);
+    }
+
+    /**
+     * Number of offered events in the normal lane, that are not yet discarded.
+     */
+    private int bounded_size() {
+        return Math.max(0, bounded - pending_drops);
+    }
+
+    /**
+     * Current number of events in the queue, including the urgent lane.
+     */
+    public int size() {
+        return urgent.size() + normal_size();
+    }
+
+    /**
+     * Highest number of offered events in the queue after an {@link #offer(Object)} to the bounded queue.
+     */
+    public int get_max_depth() {
+        offer_lock.lock();
+        try {
+            return max_depth;
+        } finally {
+            offer_lock.unlock();
+        }
+    }
+
+    /**
+     * Number of events that were dropped by {@link OverflowPolicy#DROP_OLDEST} or {@link OverflowPolicy#DROP_NEWEST}.
+     */
+    public long get_dropped_count() {
+        offer_lock.lock();
+        try {
+            return dropped;
+        } finally {
+            offer_lock.unlock();
+        }
+    }
+
+    /**
+     * Number of events that were rejected by {@link OverflowPolicy#FAIL} or {@link OverflowPolicy#BLOCK}.
+     */
+    public long get_rejected_count() {
+        offer_lock.lock();
+        try {
+            return rejected;
+        } finally {
+            offer_lock.unlock();
+        }
+    }
 }
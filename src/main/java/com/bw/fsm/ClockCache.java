@@ -0,0 +1,124 @@
+package com.bw.fsm;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache with a lock-free read path, for caches that are read by all sessions of a model on each step.<br>
+ * LRU is approximated by the "clock" algorithm: a lookup only sets the "referenced" flag of the entry.
+ * If a "put" exceeds the capacity, the clock hand runs over the entries, removes entries that were not referenced
+ * since the last round and resets the flag of the others. Only one thread evicts at a time, concurrent "puts" don't
+ * wait for it, so the cache may exceed the capacity a bit for a short time.
+ */
+final class ClockCache<K, V> {
+
+    private static final class Node<V> {
+        final V value;
+        volatile boolean referenced;
+
+        Node(V value) {
+            this.value = value;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Guards the clock hand.
+     */
+    private final ReentrantLock evict_lock = new ReentrantLock();
+    private Iterator<Map.Entry<K, Node<V>>> hand;
+
+    private volatile int capacity;
+
+    ClockCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    boolean enabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Gets a value and counts the hit or miss.
+     */
+    V get(K key) {
+        final Node<V> node = entries.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        // Avoid the write if possible, the flag is shared by all readers.
+        if (!node.referenced)
+            node.referenced = true;
+        hits.increment();
+        return node.value;
+    }
+
+    void put(K key, V value) {
+        final int capacity = this.capacity;
+        if (capacity > 0) {
+            entries.put(key, new Node<>(value));
+            if (entries.size() > capacity && evict_lock.tryLock()) {
+                try {
+                    evict();
+                } finally {
+                    evict_lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        // Two rounds reset all flags, the limit only stops readers from keeping the hand running.
+        int steps = 2 * entries.size() + 1;
+        while (entries.size() > capacity) {
+            if (hand == null || !hand.hasNext()) {
+                hand = entries.entrySet().iterator();
+                if (!hand.hasNext())
+                    return;
+            }
+            final Node<V> node = hand.next().getValue();
+            if (node.referenced && --steps > 0)
+                node.referenced = false;
+            else
+                hand.remove();
+        }
+    }
+
+    /**
+     * Sets the maximal number of entries. 0 disables the cache.
+     */
+    void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        if (entries.size() > this.capacity)
+            entries.clear();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    void clear() {
+        entries.clear();
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -0,0 +1,77 @@
+package com.bw.fsm;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes the invoked child sessions of a session on the thread (or pooled task) of the parent session,
+ * see {@link ExecutorState#cooperative_children}.<br>
+ * A child is executed as {@link PooledSessionTask} with this scheduler as pool: each run of the child is posted
+ * as {@link Event#cooperative_run} to the urgent lane of the external queue of the parent. So the child processes
+ * its events between two macrosteps of the parent and events between parent and child are passed without thread
+ * hand-off. These runs are no activity of the parent and don't request journal checkpoints of the parent.
+ * The order of the events in each queue is the same as with a thread per session.<br>
+ * After the parent has terminated, pending and further runs are executed by the pool of the executor,
+ * e.g. to process the cancel of the child.
+ */
+public final class CooperativeScheduler implements Executor {
+
+    /**
+     * A run that is executed only once, either by the parent or by the pool.
+     */
+    private final class Run implements Runnable {
+        private final Runnable command;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Run(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) {
+                pending.remove(this);
+                command.run();
+            }
+        }
+    }
+
+    private final BlockingQueue<Event> parent_queue;
+    private final FsmExecutor executor;
+    private final Set<Run> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public CooperativeScheduler(BlockingQueue<Event> parent_queue, FsmExecutor executor) {
+        this.parent_queue = parent_queue;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        final Run run = new Run(command);
+        pending.add(run);
+        if (!closed) {
+            parent_queue.enqueue_urgent(Event.new_cooperative_run(run));
+            // Otherwise the run is also handed over by "close".
+            if (!closed)
+                return;
+        }
+        executor.get_pool().execute(run);
+    }
+
+    /**
+     * Called after the parent has terminated. Hands all pending runs over to the pool.
+     */
+    void close() {
+        closed = true;
+        for (Run run : pending) {
+            executor.get_pool().execute(run);
+        }
+    }
+
+    public boolean is_closed() {
+        return closed;
+    }
+}
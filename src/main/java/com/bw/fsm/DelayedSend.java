@@ -0,0 +1,97 @@
+package com.bw.fsm;
+
+import com.bw.fsm.datamodel.GlobalData;
+import com.bw.fsm.eventIoProcessor.EventIOProcessor;
+
+import java.util.ArrayList;
+
+/**
+ * A pending &lt;send> with delay.<br>
+ * The timer only puts an action into the external queue of the session, the send itself is done by the session
+ * (see {@link Event#delayed_action}). All fields except the timer are needed to re-schedule the send,
+ * e.g. after hibernation (see {@link SessionSnapshot}).
+ */
+public final class DelayedSend {
+
+    /**
+     * The "sendid" or null.
+     */
+    public final String send_id;
+    /**
+     * Type of the IO-Processor.
+     */
+    public final String type;
+    public final String target;
+    public final Event event;
+    /**
+     * Due time in milliseconds since epoch (System.currentTimeMillis).
+     */
+    public final long due_ms;
+
+    private FsmTimer timer;
+
+    public DelayedSend(String send_id, String type, String target, Event event, long due_ms) {
+        this.send_id = send_id;
+        this.type = type;
+        this.target = target;
+        this.event = event;
+        this.due_ms = due_ms;
+    }
+
+    /**
+     * Registers the send at the session and starts the timer. Must be called by the session.
+     */
+    public void schedule(GlobalData global) {
+        if (send_id != null) {
+            global.delayed_send.computeIfAbsent(send_id, id -> new ArrayList<>(1)).add(this);
+        }
+        global.pending_delayed_send.add(this);
+        timer = global.executor.get_timer().schedule(Math.max(0, due_ms - System.currentTimeMillis()),
+                () -> global.externalQueue.enqueue(Event.new_delayed_action(() -> this.send(global))));
+    }
+
+    /**
+     * Executed by the session after the timer has expired.
+     */
+    private void send(GlobalData global) {
+        // Skip if cancelled after the timer has expired.
+        if (!global.pending_delayed_send.remove(this))
+            return;
+        unregister(global);
+        EventIOProcessor iop = global.io_processors.get(type);
+        if (iop == null) {
+            Log.error("Unknown io-processor %s", type);
+            global.enqueue_internal(Event.error_execution(send_id, event.invoke_id));
+        } else {
+            iop.send(global, target, event);
+        }
+    }
+
+    /**
+     * Stops the timer. Must be called by the session. The send is removed from the session.
+     *
+     * @return false if the timer has already expired.
+     */
+    public boolean cancel(GlobalData global) {
+        global.pending_delayed_send.remove(this);
+        unregister(global);
+        return timer == null || timer.cancel();
+    }
+
+    private void unregister(GlobalData global) {
+        if (send_id != null) {
+            final java.util.List<DelayedSend> sends = global.delayed_send.get(send_id);
+            if (sends != null && sends.remove(this) && sends.isEmpty())
+                global.delayed_send.remove(send_id);
+        }
+    }
+
+    /**
+     * Stops the timer, but keeps the send registered at the session.
+     *
+     * @return false if the timer has already expired.
+     */
+    boolean stop_timer() {
+        return timer == null || timer.cancel();
+    }
+}
@@ -58,6 +58,19 @@ public class Event {
      */
     public Data content;
 
+    /**
+     * If set, this is no real event but an action that the session executes when it takes the "event" from its
+     * external queue, e.g. a delayed &lt;send> (see {@link TimerWheel}). So the action is executed by the session
+     * thread and not by the timer.
+     */
+    public Runnable delayed_action;
+
+    /**
+     * If set, this is no real event but a run of a child session that is executed on the thread of this session
+     * (see {@link CooperativeScheduler}). Unlike {@link #delayed_action} this is no activity of the session itself.
+     */
+    public Runnable cooperative_run;
+
     public Event() {
         this.name = "";
         this.etype = EventType.external;
@@ -90,6 +103,22 @@ public class Event {
         return event;
     }
 
+    public static Event new_delayed_action(Runnable action) {
+        Event event = new Event();
+        event.name = "delayed_action";
+        event.etype = EventType.platform;
+        event.delayed_action = action;
+        return event;
+    }
+
+    public static Event new_cooperative_run(Runnable run) {
+        Event event = new Event();
+        event.name = "cooperative_run";
+        event.etype = EventType.platform;
+        event.cooperative_run = run;
+        return event;
+    }
+
     public static Event error(String name) {
         Event event = new Event();
         event.name = "error." + name;
@@ -0,0 +1,100 @@
+package com.bw.fsm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load-time compiled transition lookup of one state, used by "selectTransitions" and "selectEventlessTransitions".<br>
+ * The transitions of a state never change after the model was read, so the result of the W3C "nameMatch" for
+ * a given event name is static. For each event descriptor of the state, the index stores all transitions
+ * (in document order) that match any event name having this descriptor as longest matching token-prefix.
+ * Because the token-prefixes of an event name form a chain, the candidates for an event are given by the
+ * longest token-prefix of the event name that is a known descriptor. If there is none, only wildcard
+ * transitions can match.<br>
+ * Instances are immutable and can be shared by all sessions of a model.
+ */
+public final class EventDispatchIndex {
+
+    private static final Transition[] NO_TRANSITIONS = new Transition[0];
+
+    /**
+     * The transitions without "event" attribute in document order.
+     */
+    public final Transition[] eventless;
+
+    /**
+     * Candidates for event names without any matching descriptor (the wildcard transitions) in document order.
+     */
+    private final Transition[] wildcards;
+
+    /**
+     * Key: event descriptor. Value: all transitions that match an event with this descriptor as token-prefix, in document order.
+     */
+    private final Map<String, Transition[]> descriptors = new HashMap<>();
+
+    public EventDispatchIndex(State state) {
+        java.util.List<Transition> sorted = new ArrayList<>(state.transitions.data);
+        sorted.sort(Fsm.transition_document_order);
+
+        java.util.List<Transition> eventlessTransitions = new ArrayList<>();
+        java.util.List<Transition> eventTransitions = new ArrayList<>(sorted.size());
+        for (Transition t : sorted) {
+            if (t.events == null || t.events.isEmpty()) {
+                eventlessTransitions.add(t);
+            } else {
+                eventTransitions.add(t);
+            }
+        }
+        this.eventless = eventlessTransitions.toArray(NO_TRANSITIONS);
+        this.wildcards = eventTransitions.stream().filter(t -> t.wildcard).toArray(Transition[]::new);
+
+        for (Transition t : eventTransitions) {
+            for (String descriptor : t.events) {
+                if (!descriptors.containsKey(descriptor)) {
+                    descriptors.put(descriptor, eventTransitions.stream()
+                            .filter(c -> c.nameMatch(descriptor))
+                            .toArray(Transition[]::new));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the candidate transitions for an event in document order.
+     *
+     * @param prefixes The token-prefixes of the event name, as returned by {@link #token_prefixes(String)}.
+     * @return The transitions with matching "event" attribute. Never null. Must not be modified.
+     */
+    public Transition[] lookup(String[] prefixes) {
+        if (!descriptors.isEmpty()) {
+            for (int i = prefixes.length - 1; i >= 0; --i) {
+                Transition[] candidates = descriptors.get(prefixes[i]);
+                if (candidates != null)
+                    return candidates;
+            }
+        }
+        return wildcards;
+    }
+
+    /**
+     * Computes all token-prefixes of an event name, the shortest first.
+     * The last entry is the name itself.<br>
+     * E.g. "error.send.failed" gives "error", "error.send" and "error.send.failed".
+     */
+    public static String[] token_prefixes(String eventName) {
+        int count = 1;
+        for (int i = 0; i < eventName.length(); ++i) {
+            if (eventName.charAt(i) == '.')
+                ++count;
+        }
+        String[] prefixes = new String[count];
+        int idx = 0;
+        for (int i = 0; i < eventName.length(); ++i) {
+            if (eventName.charAt(i) == '.')
+                prefixes[idx++] = eventName.substring(0, i);
+        }
+        prefixes[idx] = eventName;
+        return prefixes;
+    }
+}
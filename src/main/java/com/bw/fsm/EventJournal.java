@@ -0,0 +1,227 @@
+package com.bw.fsm;
+
+import com.bw.fsm.serializer.DefaultProtocolReader;
+import com.bw.fsm.serializer.SessionSnapshotReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-ahead journal of sessions, one file per session (see {@link SessionJournal}) in a directory.<br>
+ * Each file starts with a checkpoint (a {@link SessionSnapshot} in a stable configuration), followed by the external
+ * events that the session has accepted after the checkpoint. A session can be rebuilt from its file after a crash
+ * (see {@link FsmExecutor#recover(Fsm, com.bw.fsm.actions.ActionWrapper, com.bw.fsm.tracer.TraceMode)}):
+ * the checkpoint is restored and the events are processed again.<br>
+ * Processing the events again also executes their executable content again. Outbound {@code <send>} and the
+ * effects of custom actions are not suppressed, so receivers get them at least once and have to tolerate
+ * duplicates. Invoked sessions are not journaled: on recovery the invokes of the active states are started
+ * again, the new child sessions begin from their initial configuration.<br>
+ * The sessions write their records directly to the file, so the records survive a crash of the process.
+ * The records are forced to the disk (fsync) in groups by a flusher thread every "sync_interval_ms". Records
+ * of all sessions that were written in one interval share one force per file.
+ * <br>
+ * Record format: length of the payload (4 bytes), type (1 byte), payload. A torn record at the end of the file
+ * (after a crash during the write) is ignored.
+ */
+public class EventJournal {
+
+    public static final byte RECORD_CHECKPOINT = 'C';
+    public static final byte RECORD_EVENT = 'E';
+    public static final int RECORD_HEADER_SIZE = 5;
+
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 2;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * The content of a journal file.
+     */
+    public static final class Recovery {
+        public final SessionSnapshot checkpoint;
+        /**
+         * The events after the checkpoint, in the order they were accepted.
+         */
+        public final java.util.List<Event> events;
+
+        public Recovery(SessionSnapshot checkpoint, java.util.List<Event> events) {
+            this.checkpoint = checkpoint;
+            this.events = events;
+        }
+    }
+
+    protected final Path directory;
+    protected final long sync_interval_ms;
+    protected final int checkpoint_interval;
+
+    /**
+     * Journals with records that are not forced to the disk.
+     */
+    private final Set<SessionJournal> dirty = ConcurrentHashMap.newKeySet();
+    /**
+     * Started with the first written record, so the thread doesn't see a partially constructed journal.
+     */
+    private volatile Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param sync_interval_ms    Interval of the group-commit in milliseconds. 0 to never force the files, the records
+     *                            survive only a crash of the process, not of the system.
+     * @param checkpoint_interval Number of events after which a session writes a new checkpoint.
+     */
+    public EventJournal(Path directory, long sync_interval_ms, int checkpoint_interval) throws IOException {
+        this.directory = directory;
+        this.sync_interval_ms = Math.max(0, sync_interval_ms);
+        this.checkpoint_interval = Math.max(1, checkpoint_interval);
+        Files.createDirectories(directory);
+    }
+
+    public EventJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SYNC_INTERVAL_MS, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Gets the file of a session.
+     */
+    public Path get_path(int session_id) {
+        return directory.resolve("journal_" + session_id + ".bin");
+    }
+
+    public int get_checkpoint_interval() {
+        return checkpoint_interval;
+    }
+
+    /**
+     * Opens the journal for a new session. The file is created with the first checkpoint.
+     */
+    public SessionJournal open(int session_id) {
+        return new SessionJournal(this, session_id, null);
+    }
+
+    /**
+     * Opens the journal of a recovered session, to append further events. The events of the recovery are not
+     * appended again if the session processes them.
+     */
+    public SessionJournal reopen(int session_id, Recovery recovery) {
+        return new SessionJournal(this, session_id, recovery);
+    }
+
+    /**
+     * Gets the ids of all sessions with a journal file.
+     */
+    public java.util.List<Integer> get_session_ids() throws IOException {
+        java.util.List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal_*.bin")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Reads the journal file of a session.
+     *
+     * @return The recovery or null if the file doesn't exist or has no valid checkpoint.
+     */
+    public Recovery read(int session_id) throws IOException {
+        Path path = get_path(session_id);
+        if (!Files.exists(path))
+            return null;
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        SessionSnapshot checkpoint = null;
+        java.util.List<Event> events = new ArrayList<>();
+        while (bytes.remaining() >= RECORD_HEADER_SIZE) {
+            final int length = bytes.getInt();
+            final byte type = bytes.get();
+            if (length < 0 || length > bytes.remaining()) {
+                Log.warn("Journal of session #%d: torn record at the end", session_id);
+                break;
+            }
+            final int offset = bytes.position();
+            bytes.position(offset + length);
+            SessionSnapshotReader reader = new SessionSnapshotReader(new DefaultProtocolReader(
+                    new ByteArrayInputStream(bytes.array(), offset, length)));
+            if (type == RECORD_CHECKPOINT) {
+                checkpoint = reader.read();
+                events.clear();
+            } else if (type == RECORD_EVENT) {
+                Event event = reader.read_event();
+                if (reader.has_error())
+                    break;
+                events.add(event);
+            } else {
+                Log.error("Journal of session #%d: unknown record type %d", session_id, type);
+                break;
+            }
+            if (checkpoint == null)
+                return null;
+        }
+        return checkpoint == null ? null : new Recovery(checkpoint, events);
+    }
+
+    /**
+     * Called by a session journal after a record was written.
+     */
+    void mark_dirty(SessionJournal journal) {
+        if (sync_interval_ms > 0) {
+            dirty.add(journal);
+            if (flusher == null)
+                start_flusher();
+        }
+    }
+
+    private synchronized void start_flusher() {
+        if (flusher == null && !closed)
+            flusher = Thread.ofPlatform().daemon().name("fsm_journal").start(this::run_flusher);
+    }
+
+    /**
+     * Forces all written records to the disk.
+     */
+    public void sync() {
+        for (SessionJournal journal : dirty) {
+            dirty.remove(journal);
+            journal.force();
+        }
+    }
+
+    private void run_flusher() {
+        final long interval_ns = TimeUnit.MILLISECONDS.toNanos(sync_interval_ms);
+        while (!closed) {
+            LockSupport.parkNanos(interval_ns);
+            sync();
+        }
+    }
+
+    /**
+     * Stops the flusher thread after a last sync. Open session journals are not closed.
+     */
+    public void close() {
+        final Thread flusher;
+        synchronized (this) {
+            closed = true;
+            flusher = this.flusher;
+        }
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+    }
+}
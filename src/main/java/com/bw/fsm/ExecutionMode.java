@@ -0,0 +1,43 @@
+package com.bw.fsm;
+
+import java.util.Locale;
+
+/**
+ * Defines how the sessions of a {@link FsmExecutor} are executed.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Default. Each session runs in its own platform thread.
+     */
+    PLATFORM_THREAD,
+    /**
+     * Each session runs in its own virtual thread. A session that waits for events doesn't occupy an OS thread,
+     * so a large number of mostly idle sessions can run in one process.
+     */
+    VIRTUAL_THREAD,
+    /**
+     * Sessions are executed as tasks in a shared pool. A session with pending events is submitted as task that
+     * processes a bounded number of events (see {@link Fsm#step(com.bw.fsm.datamodel.Datamodel, int)}).
+     * An idle session holds no thread at all.<br>
+     * {@link ScxmlSession#thread} is null in this mode.
+     */
+    POOLED;
+
+    /**
+     * Case invariant converter. Returns {@link #PLATFORM_THREAD} for null or unknown values.
+     */
+    public static ExecutionMode fromString(String mode) {
+        if (mode == null)
+            return PLATFORM_THREAD;
+        return switch (mode.toLowerCase(Locale.CANADA)) {
+            case "platform", "platform_thread" -> PLATFORM_THREAD;
+            case "virtual", "virtual_thread" -> VIRTUAL_THREAD;
+            case "pooled" -> POOLED;
+            default -> {
+                Log.warn("Unknown execution mode %s", mode);
+                yield PLATFORM_THREAD;
+            }
+        };
+    }
+}
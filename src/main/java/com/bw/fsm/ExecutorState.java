@@ -6,9 +6,58 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ExecutorState {
     public final List<EventIOProcessor> processors = new ArrayList<>();
-    public final Map<Integer, ScxmlSession> sessions = new HashMap<>();
+    /**
+     * The running sessions. Sessions are removed after they have terminated.
+     */
+    public final Map<Integer, ScxmlSession> sessions = new ConcurrentHashMap<>();
     public final Map<String, String> datamodel_options = new HashMap<>();
+
+    /**
+     * How new sessions are executed.
+     */
+    public ExecutionMode execution_mode = ExecutionMode.PLATFORM_THREAD;
+
+    /**
+     * Number of worker threads of the pool for {@link ExecutionMode#POOLED}. 0 for the number of processors.
+     */
+    public int pool_parallelism = 0;
+
+    /**
+     * Maximal number of external events a pooled session processes before it yields the worker.
+     */
+    public int pool_batch_size = 16;
+
+    /**
+     * Default capacity of the external queue of new sessions, 0 for unbounded queues.
+     * See {@link BlockingQueue#set_capacity(int, OverflowPolicy, long)}.
+     */
+    public int queue_capacity = 0;
+
+    /**
+     * Default policy for full external queues.
+     */
+    public OverflowPolicy queue_overflow_policy = OverflowPolicy.FAIL;
+
+    /**
+     * Maximal time in milliseconds a sender waits with {@link OverflowPolicy#BLOCK}.
+     */
+    public long queue_block_timeout_ms = 1000;
+
+    /**
+     * If true, invoked SCXML child sessions run on the thread (or pooled task) of their parent session,
+     * see {@link CooperativeScheduler}. Intended for short-living children, as a busy child delays the events
+     * of its parent.
+     */
+    public boolean cooperative_children = false;
+
+    /**
+     * Capacity of the {@link TransitionSelectionCache} of the models loaded by the executor, 0 disables the cache.
+     * -1 keeps the setting of the model. Set once when the model is loaded, models that are parsed by the caller
+     * are not changed, as they may be shared with other executors.
+     */
+    public int selection_cache_capacity = -1;
 }
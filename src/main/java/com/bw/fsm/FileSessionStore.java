@@ -0,0 +1,74 @@
+package com.bw.fsm;
+
+import com.bw.fsm.serializer.DefaultProtocolReader;
+import com.bw.fsm.serializer.DefaultProtocolWriter;
+import com.bw.fsm.serializer.SessionSnapshotReader;
+import com.bw.fsm.serializer.SessionSnapshotWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores snapshots of sessions as binary files in a directory, one file per session.<br>
+ * A snapshot is written to a temporary file, forced to the disk and then moved, so a crash never leaves a
+ * partial snapshot.
+ */
+public class FileSessionStore implements SessionStore {
+
+    protected final Path directory;
+
+    public FileSessionStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Gets the file of a session.
+     */
+    public Path get_path(int session_id) {
+        return directory.resolve("session_" + session_id + ".bin");
+    }
+
+    @Override
+    public void save(SessionSnapshot snapshot) throws IOException {
+        Path path = get_path(snapshot.session_id);
+        Path tmp = directory.resolve("session_" + snapshot.session_id + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            SessionSnapshotWriter writer = new SessionSnapshotWriter(new DefaultProtocolWriter(os));
+            writer.write(snapshot);
+            writer.close();
+        }
+        // The content has to be on the disk before the move, otherwise a crash can leave the moved file empty.
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public SessionSnapshot load(int session_id) throws IOException {
+        Path path = get_path(session_id);
+        if (!Files.exists(path))
+            return null;
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+            return new SessionSnapshotReader(new DefaultProtocolReader(is)).read();
+        }
+    }
+
+    @Override
+    public void remove(int session_id) throws IOException {
+        Files.deleteIfExists(get_path(session_id));
+    }
+}
@@ -4,6 +4,7 @@ import com.bw.fsm.actions.ActionWrapper;
 import com.bw.fsm.datamodel.Datamodel;
 import com.bw.fsm.datamodel.DatamodelFactory;
 import com.bw.fsm.datamodel.GlobalData;
+import com.bw.fsm.datamodel.SharedFunctions;
 import com.bw.fsm.eventIoProcessor.ScxmlEventIOProcessor;
 import com.bw.fsm.expressionEngine.ExpressionException;
 import com.bw.fsm.tracer.TraceArgument;
@@ -15,10 +16,17 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
- * The FSM implementation, according to W3C proposal.
+ * The FSM implementation, according to W3C proposal.<br>
+ * <b>Actual implementation:</b><br>
+ * An instance is the model. After {@link #prepare_model()} the model is not modified by sessions, all runtime
+ * state of a session is in its {@link GlobalData}. So one instance can serve any number of concurrent sessions.
  */
 @SuppressWarnings("unused")
 public class Fsm {
@@ -28,6 +36,9 @@ public class Fsm {
 
     /// Platform specific event to cancel the current session.
     public static final String EVENT_CANCEL_SESSION = "error.platform.cancel";
+
+    /// Platform specific event to passivate the current session, see "FsmExecutor.set_hibernation".
+    public static final String EVENT_HIBERNATE_SESSION = "error.platform.hibernate";
     public static final String EVENT_DONE_INVOKE_PREFIX = "done.invoke.";
 
     public static final Comparator<State> state_document_order = Comparator.comparingInt(s -> s.doc_id);
@@ -48,7 +59,6 @@ public class Fsm {
     public static final Comparator<Invoke> invoke_document_order = Comparator.comparing(s -> s.doc_id);
 
 
-    public Tracer tracer;
     public String datamodel;
     public BindingType binding = BindingType.Early;
     public String version;
@@ -67,15 +77,173 @@ public class Fsm {
     public ExecutableContentBlock script;
 
     /**
-     * Set if this FSM was created as result of some invoke.
-     * See also Global.caller_invoke_id
+     * Capacity of the external queue of new sessions of this model. If null, {@link ExecutorState#queue_capacity} is used.
+     */
+    public Integer queue_capacity;
+
+    /**
+     * Policy for full external queues of new sessions of this model.
+     * If null, {@link ExecutorState#queue_overflow_policy} is used.
      */
-    public String caller_invoke_id;
-    public Integer parent_session_id;
+    public OverflowPolicy queue_overflow_policy;
 
-    public Timer timer;
+    /**
+     * Cache of precomputed microsteps. See {@link TransitionPlanCache}.
+     */
+    public final TransitionPlanCache plan_cache = new TransitionPlanCache(TransitionPlanCache.DEFAULT_CAPACITY);
 
-    public int generate_id_count = 0;
+    /**
+     * Optional cache of selected transitions for condition-free candidates. See {@link TransitionSelectionCache}.
+     * Disabled by default, see {@link ExecutorState#selection_cache_capacity}.
+     */
+    public final TransitionSelectionCache selection_cache = new TransitionSelectionCache(0);
+
+    /**
+     * Compiled scripts of the datamodel, key: {@link com.bw.fsm.datamodel.SourceCode#source_id}.
+     * Shared by all sessions of the model. The values are defined by the datamodel (e.g. parsed expressions)
+     * and must not be modified by the execution.
+     */
+    public final Map<Integer, Object> compiled_scripts = new ConcurrentHashMap<>();
+
+    private volatile String model_id;
+
+    public static final int INLINE_MODEL_CAPACITY = 16;
+
+    /**
+     * Compiled inline documents of &lt;invoke>, for content that is not already compiled by the reader
+     * (see {@link Data.FsmDefinition}), e.g. the result of a content expression.
+     */
+    public final ModelCache inline_models = new ModelCache(INLINE_MODEL_CAPACITY);
+
+    /**
+     * Set by {@link #prepare_model()}.
+     */
+    private volatile boolean prepared = false;
+
+    /**
+     * Number of eventless transitions with condition, see {@link Transition#guard_index}. Set by {@link #prepare_model()}.
+     */
+    private int guard_count;
+
+    /**
+     * Prepares the model if not already done. Sessions that start concurrently on an unprepared model prepare it only
+     * once, a prepared model is never changed by a session.
+     */
+    public void prepare_once() {
+        if (!this.prepared) {
+            synchronized (this) {
+                if (!this.prepared)
+                    this.prepare_model();
+            }
+        }
+    }
+
+    /**
+     * Gets the identity of the model for snapshots and journals (see {@link SessionSnapshot#model_id}): a hash over
+     * the states and transitions, so each parse of the same document has the same identity.
+     */
+    public String get_model_id() {
+        String id = this.model_id;
+        if (id == null) {
+            java.util.List<State> states = new ArrayList<>(this.statesNames.values());
+            states.sort(Comparator.comparingInt(s -> s.doc_id));
+            StringBuilder sb = new StringBuilder(states.size() * 32);
+            sb.append(this.name).append('\n');
+            for (State s : states) {
+                // Only the order of the ids, the values depend on the other parsed documents.
+                sb.append(s.name).append(' ')
+                        .append(s.parent == null ? "" : s.parent.name).append(' ')
+                        .append(s.is_parallel).append(s.is_final).append(s.history_type).append('\n');
+                for (Transition t : s.transitions.data) {
+                    sb.append(" t ").append(t.events).append(' ').append(t.transition_type).append(' ');
+                    for (State target : t.target)
+                        sb.append(target.name).append(',');
+                    sb.append('\n');
+                }
+            }
+            try {
+                byte[] hash = java.security.MessageDigest.getInstance("SHA-256")
+                        .digest(sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                id = HexFormat.of().formatHex(hash, 0, 16);
+            } catch (java.security.NoSuchAlgorithmException e) {
+                id = Integer.toHexString(sb.toString().hashCode());
+            }
+            this.model_id = id;
+        }
+        return id;
+    }
+
+    /**
+     * Creates the load-time compiled runtime structures of the model (the event dispatch index, the
+     * interval-encoded hierarchy, the document order index and the eventless transition counts of the states and
+     * the index of eventless conditions).<br>
+     * Called by the readers after the model is complete. If not called, the first session will do it.
+     * The model must not be modified afterward.
+     */
+    public synchronized void prepare_model() {
+        int[] order = new int[]{0, 0};
+        for (State state : this.statesNames.values()) {
+            state.ancestors = null;
+        }
+        if (this.pseudo_root != null) {
+            this.prepare_hierarchy(this.pseudo_root, new State[0], order);
+        }
+        for (State state : this.statesNames.values()) {
+            if (state.ancestors == null && state.parent == null) {
+                // Not reachable from the root (e.g. referenced but not declared states).
+                this.prepare_hierarchy(state, new State[0], order);
+            }
+        }
+        java.util.List<State> documentOrder = new ArrayList<>(this.statesNames.values());
+        documentOrder.sort(Fsm.state_document_order);
+        int doc_index = 0;
+        for (State state : documentOrder) {
+            state.doc_index = doc_index++;
+            state.event_dispatch = new EventDispatchIndex(state);
+        }
+        if (this.pseudo_root != null && this.pseudo_root.event_dispatch == null) {
+            this.pseudo_root.event_dispatch = new EventDispatchIndex(this.pseudo_root);
+        }
+        this.guard_count = 0;
+        for (State state : documentOrder) {
+            for (Transition t : state.event_dispatch.eventless) {
+                t.guard_index = (t.cond == null || t.cond.is_empty()) ? -1 : this.guard_count++;
+            }
+        }
+        for (State state : documentOrder) {
+            int eventless_count = state.event_dispatch.eventless.length;
+            for (State ancestor : state.ancestors) {
+                if (ancestor.event_dispatch != null)
+                    eventless_count += ancestor.event_dispatch.eventless.length;
+            }
+            state.eventless_count = eventless_count;
+        }
+        this.plan_cache.clear();
+        this.selection_cache.clear();
+        this.prepared = true;
+    }
+
+    /**
+     * Assigns pre-/post-order indices, depth and ancestors to the sub-tree of "state".
+     * History states are not part of "states" but are leaves of their parent.
+     *
+     * @param order Counters for the pre- and post-order walk.
+     */
+    private void prepare_hierarchy(State state, State[] ancestors, int[] order) {
+        state.ancestors = ancestors;
+        state.depth = ancestors.length;
+        state.pre_order = order[0]++;
+
+        State[] childAncestors = Arrays.copyOf(ancestors, ancestors.length + 1);
+        childAncestors[ancestors.length] = state;
+        for (State child : state.states) {
+            this.prepare_hierarchy(child, childAncestors, order);
+        }
+        for (State child : state.history.data) {
+            this.prepare_hierarchy(child, childAncestors, order);
+        }
+        state.post_order = order[1]++;
+    }
 
     /**
      * Starts the FSM inside a worker thread.
@@ -89,14 +257,73 @@ public class Fsm {
             FsmExecutor executor,
             java.util.List<ParamPair> data,
             TraceMode trace) {
-        BlockingQueue<Event> externalQueue = new BlockingQueue<>();
+        return start_fsm_with_data(actions, executor, data, null, null, trace);
+    }
 
-        tracer = Tracer.getInstance();
+    /**
+     * Starts the FSM inside a worker thread, as invoked session if "parent_session_id" is set.<br>
+     * The model is not modified, so the same model can be used for any number of concurrent sessions.
+     *
+     * @param parent_session_id The session id of the invoking session or null.
+     * @param caller_invoke_id  The invoke id in the invoking session or null.
+     */
+    public @NotNull ScxmlSession start_fsm_with_data(
+            ActionWrapper actions,
+            FsmExecutor executor,
+            java.util.List<ParamPair> data,
+            Integer parent_session_id,
+            String caller_invoke_id,
+            TraceMode trace) {
+        Tracer tracer = Tracer.getInstance();
         tracer.enable_trace(trace);
+        return start_session(new SessionBootstrap(executor, actions, executor.create_io_processor_map(), tracer, false),
+                data, parent_session_id, caller_invoke_id);
+    }
+
+    /**
+     * Creates the shared bootstrap for sessions of this model, see {@link FsmExecutor#spawn}.<br>
+     * The functions of the datamodel are prepared once (see {@link DatamodelFactory#share_functions}) and added
+     * to a frozen copy of the actions.
+     */
+    public SessionBootstrap create_bootstrap(ActionWrapper actions, FsmExecutor executor, TraceMode trace) {
+        this.prepare_once();
+        Tracer tracer = Tracer.getInstance();
+        tracer.enable_trace(trace);
+        ActionWrapper shared_actions = actions == null ? new ActionWrapper() : actions.copy();
+        GlobalData gd = new GlobalData(tracer);
+        gd.executor = executor;
+        gd.actions = shared_actions;
+        SharedFunctions shared_functions = DatamodelFactory.share_datamodel_functions(this.datamodel, this, gd,
+                executor.state.datamodel_options);
+        shared_actions.freeze();
+        return new SessionBootstrap(executor, shared_actions, Map.copyOf(executor.create_io_processor_map()), tracer, true,
+                shared_functions);
+    }
+
+    /**
+     * Starts a top-level session with the bootstrap.
+     */
+    public @NotNull ScxmlSession start_session(SessionBootstrap bootstrap, java.util.List<ParamPair> data) {
+        return start_session(bootstrap, data, null, null);
+    }
+
+    /**
+     * Starts a session with the bootstrap.
+     *
+     * @param parent_session_id The session id of the invoking session or null.
+     * @param caller_invoke_id  The invoke id in the invoking session or null.
+     */
+    public @NotNull ScxmlSession start_session(SessionBootstrap bootstrap, java.util.List<ParamPair> data,
+                                               Integer parent_session_id, String caller_invoke_id) {
+        final FsmExecutor executor = bootstrap.executor;
+        final Tracer tracer = bootstrap.tracer;
+        BlockingQueue<Event> externalQueue = this.create_external_queue(executor);
 
         Integer session_id = SESSION_ID_COUNTER.incrementAndGet();
         final var session = new ScxmlSession(session_id, externalQueue, tracer);
         session.global_data.source = this.name;
+        session.global_data.parent_session_id = parent_session_id;
+        session.global_data.caller_invoke_id = caller_invoke_id;
 
         if ( StaticOptions.trace && tracer != null) {
             tracer.registerSession(session_id, this.name);
@@ -105,58 +332,333 @@ public class Fsm {
         executor.state.sessions.put(session_id, session);
         final var options = executor.state.datamodel_options;
 
-        session.global_data.actions = actions;
-        for (var p : executor.state.processors) {
-            for (var t : p.get_types()) {
-                session.global_data.io_processors.put(t, p);
-            }
-        }
+        session.global_data.actions = bootstrap.actions;
+        session.global_data.io_processors = bootstrap.io_processors;
+        session.global_data.shared_functions = bootstrap.shared_functions;
 
         // Take over the current log stream to new Thread
-        final PrintStream os = Log.getPrintStream();
+        this.launch_session(session, executor, Log.getPrintStream(), !bootstrap.bulk,
+                () -> this.create_session_datamodel(session, executor, data, options),
+                this::interpret, this::initializeInterpreter);
+        return session;
+    }
+
+    /**
+     * Creates the external queue of a new session, bounded if configured by the model or the executor.
+     */
+    protected BlockingQueue<Event> create_external_queue(FsmExecutor executor) {
+        BlockingQueue<Event> externalQueue = new BlockingQueue<>();
+        final int capacity = this.queue_capacity == null ? executor.state.queue_capacity : this.queue_capacity;
+        if (capacity > 0) {
+            externalQueue.set_capacity(capacity,
+                    this.queue_overflow_policy == null ? executor.state.queue_overflow_policy : this.queue_overflow_policy,
+                    executor.state.queue_block_timeout_ms);
+        }
+        return externalQueue;
+    }
+
+    /**
+     * Rebuilds a session from its journal, see {@link FsmExecutor#recover}. The session gets its former id.
+     * The events of the journal are put into the external queue before the session is started, so they are
+     * processed again before any new event.
+     */
+    public @NotNull ScxmlSession recover_session(SessionBootstrap bootstrap, EventJournal.Recovery recovery) {
+        final FsmExecutor executor = bootstrap.executor;
+        final int session_id = recovery.checkpoint.session_id;
+        SESSION_ID_COUNTER.accumulateAndGet(session_id, Math::max);
+
+        BlockingQueue<Event> externalQueue = this.create_external_queue(executor);
+        for (Event event : recovery.events) {
+            externalQueue.enqueue(event);
+        }
+        final var session = new ScxmlSession(session_id, externalQueue, bootstrap.tracer);
+        session.global_data.source = this.name;
+        if (StaticOptions.trace && bootstrap.tracer != null) {
+            bootstrap.tracer.registerSession(session_id, this.name);
+        }
+        executor.state.sessions.put(session_id, session);
+        session.global_data.actions = bootstrap.actions;
+        session.global_data.io_processors = bootstrap.io_processors;
+        session.global_data.shared_functions = bootstrap.shared_functions;
+
+        Log.info("Recovering SM '%s' session #%d with %d events", name, session_id, recovery.events.size());
+        this.launch_session(session, executor, Log.getPrintStream(), false,
+                () -> this.create_session_datamodel(session, executor, Collections.emptyList(),
+                        executor.state.datamodel_options),
+                datamodel -> {
+                    if (this.recoverInterpreter(datamodel, recovery))
+                        this.mainEventLoop(datamodel);
+                },
+                datamodel -> this.recoverInterpreter(datamodel, recovery));
+        return session;
+    }
+
+    /**
+     * Revives a hibernated session (see {@link FsmExecutor#set_hibernation(SessionStore, long)}) with new global data.
+     * The snapshot is loaded from the session store by the new thread or task of the session.
+     *
+     * @param bootstrap The actions, IO-Processors and tracer of the hibernated session.
+     * @param os        The log stream of the hibernated session.
+     */
+    public void resume_session(ScxmlSession session, SessionBootstrap bootstrap, PrintStream os) {
+        final FsmExecutor executor = bootstrap.executor;
+        session.global_data = new GlobalData(bootstrap.tracer);
+        session.global_data.source = this.name;
+        session.global_data.actions = bootstrap.actions;
+        session.global_data.io_processors = bootstrap.io_processors;
+        session.global_data.shared_functions = bootstrap.shared_functions;
+        if (StaticOptions.debug)
+            Log.debug("Resuming SM Session %s", session.session_id);
+        this.launch_session(session, executor, os, false,
+                () -> this.create_session_datamodel(session, executor, Collections.emptyList(),
+                        executor.state.datamodel_options),
+                this::resume, this::resumeInterpreter);
+    }
+
+    /**
+     * Starts the thread or the pooled task of a session. Invoked sessions may also run cooperatively on the
+     * thread of the parent, see {@link ExecutorState#cooperative_children}.
+     *
+     * @param os                The log stream for the session.
+     * @param datamodel_factory Creates the datamodel of the session.
+     * @param run               Executes the session in a thread of its own.
+     * @param initializer       Initializes the datamodel of a pooled session, see {@link PooledSessionTask}.
+     */
+    protected void launch_session(ScxmlSession session, FsmExecutor executor, PrintStream os, boolean log_start,
+                                  Supplier<Datamodel> datamodel_factory, Consumer<Datamodel> run,
+                                  Predicate<Datamodel> initializer) {
+        final CooperativeScheduler scheduler = executor.get_cooperative_scheduler(session);
+        if (scheduler != null) {
+            if (log_start)
+                Log.info("Starting SM '" + name + "' in session #" + session.global_data.parent_session_id);
+            executor.start_pooled_session(new PooledSessionTask(this, session, executor, os,
+                    datamodel_factory, initializer, scheduler));
+            return;
+        }
+        if (executor.get_execution_mode() == ExecutionMode.POOLED) {
+            if (log_start)
+                Log.info("Starting SM '" + name + "' in pool");
+            executor.start_pooled_session(new PooledSessionTask(this, session, executor, os,
+                    datamodel_factory, initializer));
+            return;
+        }
 
-        var thread = new Thread(
+        final GlobalData gd = session.global_data;
+        var thread = executor.create_session_thread(
                 () -> {
                     try {
                         Log.setLogStream(os);
                         if (StaticOptions.debug)
-                            Log.debug("SM Session %s starting...", session_id);
-                        Datamodel datamodel = DatamodelFactory.create_datamodel(this.datamodel, session.global_data, options);
-                        var global = datamodel.global();
-                        global.externalQueue = externalQueue;
-                        global.session_id = session_id;
-                        global.caller_invoke_id = this.caller_invoke_id;
-                        global.parent_session_id = this.parent_session_id;
-                        global.executor = executor;
-
-                        // W3C:
-                        // If the value of a key ... matches the 'id' of a <data> element
-                        // in the top-level data model of the invoked session, the SCXML Processor
-                        // MUST use the value of the key as the initial value of the corresponding
-                        // <data> element.
-                        if (!data.isEmpty()) {
-                            var root_state = this.pseudo_root;
-                            for (var val : data) {
-                                if (root_state.data.get(val.name) != null) {
-                                    root_state.data
-                                            .put(val.name, val.value.getCopy());
-                                }
-                            }
-                        }
-                        this.interpret(datamodel);
+                            Log.debug("SM Session %s starting...", session.session_id);
+                        Datamodel datamodel = datamodel_factory.get();
+                        run.accept(datamodel);
                         if (StaticOptions.debug)
-                            Log.debug("SM finished");
+                            Log.debug(gd.hibernated ? "SM hibernated" : "SM finished");
                     } catch (Exception e) {
                         Log.exception("SM terminated with exception.", e);
                     } finally {
+                        if (!gd.hibernated)
+                            executor.session_terminated(session);
                         Log.releaseStream();
                     }
                 }, String.format("sm_%s", THREAD_ID_COUNTER.incrementAndGet()));
 
         session.thread = thread;
-        Log.info("Starting SM '" + name + "' in thread " + thread.getName());
+        if (log_start)
+            Log.info("Starting SM '" + name + "' in thread " + thread.getName());
         thread.start();
-        return session;
+    }
+
+    /**
+     * Creates the datamodel of a new session and applies the initial data.
+     */
+    protected Datamodel create_session_datamodel(ScxmlSession session, FsmExecutor executor,
+                                                 java.util.List<ParamPair> data, Map<String, String> options) {
+        Datamodel datamodel = DatamodelFactory.create_datamodel(this.datamodel, session.global_data, options);
+        var global = datamodel.global();
+        global.externalQueue = session.sender;
+        global.session_id = session.session_id;
+        global.executor = executor;
+
+        // W3C:
+        // If the value of a key ... matches the 'id' of a <data> element
+        // in the top-level data model of the invoked session, the SCXML Processor
+        // MUST use the value of the key as the initial value of the corresponding
+        // <data> element.
+        // The values are set after the top-level data (see Datamodel.initializeDataModel), the shared
+        // model is not modified.
+        if (!data.isEmpty()) {
+            var root_state = this.pseudo_root;
+            for (var val : data) {
+                if (root_state.data.get(val.name) != null) {
+                    global.environment.put(val.name, val.value.getCopy());
+                }
+            }
+        }
+        return datamodel;
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Variant of {@link #interpret(Datamodel)} for a hibernated session: restores the snapshot and starts the
+     * event loop.
+     */
+    public void resume(Datamodel datamodel) {
+        if (this.resumeInterpreter(datamodel)) {
+            this.mainEventLoop(datamodel);
+        }
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Variant of "initializeInterpreter" for a hibernated session. Loads the snapshot from the session store and
+     * restores the configuration and the data. The initial configuration is not entered again.
+     *
+     * @return false if the snapshot can't be restored.
+     */
+    protected boolean resumeInterpreter(Datamodel datamodel) {
+        final var gd = datamodel.global();
+        final SessionStore store = gd.executor.get_session_store();
+        SessionSnapshot snapshot = null;
+        try {
+            if (store != null)
+                snapshot = store.load(gd.session_id);
+        } catch (IOException e) {
+            Log.exception("Failed to load snapshot of session #" + gd.session_id, e);
+        }
+        if (snapshot == null) {
+            Log.error("No snapshot for session #%d", gd.session_id);
+            return false;
+        }
+        if (!this.restoreInterpreter(datamodel, snapshot)) {
+            return false;
+        }
+        try {
+            store.remove(gd.session_id);
+        } catch (IOException e) {
+            Log.exception("Failed to remove snapshot of session #" + gd.session_id, e);
+        }
+        this.open_journal(gd);
+        return true;
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Variant of "initializeInterpreter" for a session that is rebuilt from its journal (see {@link EventJournal}).
+     * Restores the checkpoint. The events of the journal were put into the external queue, before the session was
+     * started.<br>
+     * Invoked sessions are not journaled, so the invokes of the active states are started again by the next
+     * macrostep. The new child sessions start from the beginning.
+     */
+    protected boolean recoverInterpreter(Datamodel datamodel, EventJournal.Recovery recovery) {
+        final var gd = datamodel.global();
+        if (!this.restoreInterpreter(datamodel, recovery.checkpoint)) {
+            return false;
+        }
+        for (State state : gd.configuration) {
+            if (!state.invoke.data.isEmpty())
+                gd.statesToInvoke.add(state);
+        }
+        final EventJournal journal = gd.executor.get_journal();
+        if (journal != null)
+            gd.journal = journal.reopen(gd.session_id, recovery);
+        return true;
+    }
+
+    /**
+     * Common part of {@link #resumeInterpreter(Datamodel)} and {@link #recoverInterpreter(Datamodel, EventJournal.Recovery)}:
+     * initializes the datamodel and restores the snapshot.<br>
+     * The global script is executed again, as functions of the script are not part of the snapshot. Values
+     * assigned by the script are replaced by the values of the snapshot, raised events are discarded.
+     */
+    protected boolean restoreInterpreter(Datamodel datamodel, SessionSnapshot snapshot) {
+        final var gd = datamodel.global();
+        this.prepare_once();
+
+        datamodel.clear();
+        datamodel.initialize_read_only(Datamodel.SESSION_ID_VARIABLE_NAME, new Data.Integer(gd.session_id));
+        datamodel.initialize_read_only(Datamodel.SESSION_NAME_VARIABLE_NAME, this.name == null ? Data.Null.NULL : new Data.String(this.name));
+
+        gd.historyValue.clear();
+        gd.running = true;
+
+        this.add_datamodel_functions(datamodel);
+        datamodel.set_ioprocessors();
+        this.executeGlobalScriptElement(datamodel);
+        gd.internalQueue.clear();
+
+        return snapshot.restore(this, datamodel);
+    }
+
+    /**
+     * Opens the journal of a top-level session, if the executor has a journal. Invoked sessions are not journaled,
+     * they can't be recovered without their parent.
+     */
+    protected void open_journal(GlobalData gd) {
+        final EventJournal journal = gd.executor.get_journal();
+        if (journal != null && gd.parent_session_id == null) {
+            gd.journal = journal.open(gd.session_id);
+        }
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Passivates the session: stops the timers of the delayed sends, writes a snapshot (see {@link SessionSnapshot})
+     * to the session store of the executor and releases the global data. The next event for the session revives it
+     * (see {@link #resume_session(ScxmlSession, SessionBootstrap, PrintStream)}).<br>
+     * Called by the session in a stable configuration, after it has taken {@link #EVENT_HIBERNATE_SESSION} from the
+     * queue. The session stays active if more events are queued, a timer has already expired, invoked sessions are
+     * running or the snapshot can't be written.
+     *
+     * @return true if the session was hibernated, the event loop shall return without "exitInterpreter".
+     */
+    protected boolean hibernate(Datamodel datamodel) {
+        final var gd = datamodel.global();
+        final FsmExecutor executor = gd.executor;
+        final ScxmlSession session = executor.state.sessions.get(gd.session_id);
+        if (session == null)
+            return false;
+        session.hibernate_requested = false;
+        final SessionStore store = executor.get_session_store();
+        if (store == null || !gd.internalQueue.isEmpty() || !gd.externalQueue.isEmpty() || !gd.child_sessions.isEmpty())
+            return false;
+
+        final java.util.List<DelayedSend> stopped = new ArrayList<>(gd.pending_delayed_send.size());
+        boolean expired = false;
+        for (DelayedSend delayed_send : gd.pending_delayed_send) {
+            if (!delayed_send.stop_timer()) {
+                // The action is already in the queue.
+                expired = true;
+                break;
+            }
+            stopped.add(delayed_send);
+        }
+        if (!expired) {
+            try {
+                SessionSnapshot snapshot = SessionSnapshot.capture(this, datamodel);
+                store.save(snapshot);
+                gd.hibernated = true;
+                if (gd.journal != null) {
+                    gd.journal.close();
+                    gd.journal = null;
+                }
+                if (StaticOptions.debug)
+                    Log.debug("Hibernated SM Session %s", gd.session_id);
+                long wake_up_ms = -1;
+                for (DelayedSend delayed_send : snapshot.delayed_sends) {
+                    if (wake_up_ms < 0 || delayed_send.due_ms < wake_up_ms)
+                        wake_up_ms = delayed_send.due_ms;
+                }
+                executor.session_hibernated(session, this, wake_up_ms);
+                return true;
+            } catch (IOException e) {
+                Log.exception("Failed to hibernate session #" + gd.session_id, e);
+            }
+        }
+        for (DelayedSend delayed_send : stopped) {
+            delayed_send.schedule(gd);
+        }
+        return false;
     }
 
     /// Implements variant "initializeDataModel(datamodel, doc)" from W3C.
@@ -204,17 +706,49 @@ public class Fsm {
      * </pre>
      */
     public void interpret(Datamodel datamodel) {
-        final var gd = datamodel.global();
-        final var session_id = gd.session_id;
+        final var session_id = datamodel.global().session_id;
 
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(session_id, "interpret");
+            datamodel.global().tracer.enter_method(session_id, "interpret");
+        }
+        if (!this.initializeInterpreter(datamodel)) {
+            return;
         }
+        this.mainEventLoop(datamodel);
+        if (StaticOptions.trace_method) {
+            datamodel.global().tracer.exit_method(session_id, "interpret");
+        }
+    }
+
+    /**
+     * Adds the functions to the datamodel of a session. Sessions of a shared bootstrap only take over the
+     * functions that were prepared once for all of them (see {@link #create_bootstrap}).
+     */
+    protected void add_datamodel_functions(Datamodel datamodel) {
+        final SharedFunctions shared_functions = datamodel.global().shared_functions;
+        if (shared_functions == null)
+            datamodel.add_functions(this);
+        else
+            datamodel.add_shared_functions(this, shared_functions);
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * The part of "interpret" before the main event loop: initializes the datamodel and enters the initial
+     * configuration. Used directly by {@link PooledSessionTask}, that runs the event loop via {@link #step(Datamodel, int)}.
+     *
+     * @return false if the model is not valid.
+     */
+    protected boolean initializeInterpreter(Datamodel datamodel) {
+        final var gd = datamodel.global();
+        final var session_id = gd.session_id;
+
         if (!this.valid()) {
             this.failWithError(datamodel);
-            return;
+            return false;
         }
         this.expandScxmlSource();
+        this.prepare_once();
 
         datamodel.clear();
         // Initialize session variables "_name" and "_sessionid"
@@ -226,8 +760,9 @@ public class Fsm {
         gd.historyValue.clear();
         gd.running = true;
 
-        datamodel.add_functions(this);
+        this.add_datamodel_functions(datamodel);
         datamodel.set_ioprocessors();
+        this.open_journal(gd);
 
         this.initialize_data_models_recursive(
                 datamodel,
@@ -243,10 +778,7 @@ public class Fsm {
             inital_states.push(itid);
         }
         this.enterStates(datamodel, inital_states);
-        this.mainEventLoop(datamodel);
-        if (StaticOptions.trace_method) {
-            this.tracer.exit_method(session_id, "interpret");
-        }
+        return true;
     }
 
     private boolean validateState(State state) {
@@ -283,7 +815,7 @@ public class Fsm {
      */
     protected void failWithError(Datamodel datamodel) {
         if (StaticOptions.trace)
-            this.tracer.trace(datamodel.global().session_id, "SM has failed");
+            datamodel.global().tracer.trace(datamodel.global().session_id, "SM has failed");
         throw new RuntimeException("SM has failed");
     }
 
@@ -297,14 +829,14 @@ public class Fsm {
     protected void executeGlobalScriptElement(Datamodel datamodel) {
         final int sessionId = datamodel.global().session_id;
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(sessionId, "executeGlobalScriptElement");
+            datamodel.global().tracer.enter_method(sessionId, "executeGlobalScriptElement");
         }
 
         if (this.script != null) {
             datamodel.executeContent(this, this.script);
         }
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(sessionId, "executeGlobalScriptElement");
+            datamodel.global().tracer.exit_method(sessionId, "executeGlobalScriptElement");
         }
     }
 
@@ -389,9 +921,154 @@ public class Fsm {
         final var gd = datamodel.global();
 
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "mainEventLoop");
+            gd.tracer.enter_method(gd.session_id, "mainEventLoop");
+        }
+        final var caller_invoke_id = gd.caller_invoke_id == null ? "" : gd.caller_invoke_id;
+
+        while (this.completeMacrostep(datamodel)) {
+            Event externalEvent;
+            boolean internalEventRaised = false;
+            // W3C says:
+            //   A blocking wait for an external event.  Alternatively, if we have been invoked
+            //   our parent session also might cancel us.  The mechanism for this is platform specific,
+            //   but here we assume it’s a special event we receive
+            if (StaticOptions.trace_method)
+                gd.tracer.enter_method(gd.session_id, "externalQueue.dequeue");
+            while (true) {
+                if (gd.journal != null)
+                    gd.journal.checkpoint_if_due(this, datamodel);
+                var externalEventTmp = gd.externalQueue.dequeue();
+                if (externalEventTmp == null) {
+                    if (!gd.running) {
+                        externalEvent = null;
+                        break;
+                    }
+                } else if (this.isHibernateEvent(externalEventTmp)) {
+                    if (this.hibernate(datamodel)) {
+                        if (StaticOptions.trace_method) {
+                            gd.tracer.exit_method(gd.session_id, "externalQueue.dequeue");
+                            gd.tracer.exit_method(gd.session_id, "mainEventLoop");
+                        }
+                        return;
+                    }
+                } else if (externalEventTmp.cooperative_run != null) {
+                    // A child session, neither activity of this session nor a change of its state.
+                    externalEventTmp.cooperative_run.run();
+                } else if (externalEventTmp.delayed_action != null) {
+                    gd.last_activity = System.nanoTime();
+                    externalEventTmp.delayed_action.run();
+                    if (gd.journal != null)
+                        gd.journal.request_checkpoint();
+                    // A failed delayed send raises an error that needs to be processed now.
+                    if (!gd.internalQueue.isEmpty()) {
+                        externalEvent = null;
+                        internalEventRaised = true;
+                        break;
+                    }
+                } else if (this.acceptExternalEvent(gd, externalEventTmp, caller_invoke_id)) {
+                    gd.last_activity = System.nanoTime();
+                    if (gd.journal != null)
+                        gd.journal.append(externalEventTmp);
+                    externalEvent = externalEventTmp;
+                    break;
+                }
+            }
+            if (StaticOptions.trace_method)
+                gd.tracer.exit_method(gd.session_id, "externalQueue.dequeue");
+            if (!internalEventRaised)
+                this.processExternalEvent(datamodel, externalEvent);
+        }
+        // End of outer while running loop.  If we get here, we have reached a top-level final state or have been cancelled
+        this.exitInterpreter(datamodel);
+        if (StaticOptions.trace_method) {
+            gd.tracer.exit_method(gd.session_id, "mainEventLoop");
         }
-        final var caller_invoke_id = this.caller_invoke_id == null ? "" : this.caller_invoke_id;
+    }
+
+    /**
+     * Result of {@link #step(Datamodel, int)}.
+     */
+    public enum StepResult {
+        /**
+         * The macrostep is complete and the external queue is empty.
+         */
+        IDLE,
+        /**
+         * The maximal number of events was processed, the session shall be stepped again.
+         */
+        YIELDED,
+        /**
+         * The session has terminated, "exitInterpreter" was called.
+         */
+        TERMINATED,
+        /**
+         * The session was hibernated, see {@link #hibernate(Datamodel)}.
+         */
+        HIBERNATED
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Resumable variant of {@link #mainEventLoop(Datamodel)} for sessions that are executed as tasks
+     * (see {@link ExecutionMode#POOLED}). Instead of a blocking wait for the next external event, the method returns
+     * if the external queue is empty. Each call completes the current macrostep and then processes up to
+     * "max_events" external events, each followed by its macrostep. So the state between two calls is always the
+     * same as during the blocking wait of "mainEventLoop".<br>
+     * Must not be called concurrently for the same session.
+     *
+     * @param max_events The maximal number of external events to process.
+     */
+    public StepResult step(Datamodel datamodel, int max_events) {
+        final var gd = datamodel.global();
+        final var caller_invoke_id = gd.caller_invoke_id == null ? "" : gd.caller_invoke_id;
+
+        int processed = 0;
+        while (this.completeMacrostep(datamodel)) {
+            if (processed >= max_events) {
+                return StepResult.YIELDED;
+            }
+            if (gd.journal != null)
+                gd.journal.checkpoint_if_due(this, datamodel);
+            Event externalEvent = gd.externalQueue.poll();
+            if (externalEvent == null) {
+                return StepResult.IDLE;
+            }
+            ++processed;
+            if (this.isHibernateEvent(externalEvent)) {
+                if (this.hibernate(datamodel))
+                    return StepResult.HIBERNATED;
+                continue;
+            }
+            if (externalEvent.cooperative_run != null) {
+                // A child session, neither activity of this session nor a change of its state.
+                externalEvent.cooperative_run.run();
+                continue;
+            }
+            gd.last_activity = System.nanoTime();
+            if (externalEvent.delayed_action != null) {
+                // Errors raised by the action are processed by the next macrostep.
+                externalEvent.delayed_action.run();
+                if (gd.journal != null)
+                    gd.journal.request_checkpoint();
+            } else if (this.acceptExternalEvent(gd, externalEvent, caller_invoke_id)) {
+                if (gd.journal != null)
+                    gd.journal.append(externalEvent);
+                this.processExternalEvent(datamodel, externalEvent);
+            }
+        }
+        this.exitInterpreter(datamodel);
+        return StepResult.TERMINATED;
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * The part of "mainEventLoop" that handles eventless transitions and internal events until the macrostep
+     * is complete, followed by the invokes of the entered states.
+     *
+     * @return true if the session is still running and waits for an external event.
+     */
+    protected boolean completeMacrostep(Datamodel datamodel) {
+        final var gd = datamodel.global();
 
         while (gd.running) {
             OrderedSet<Transition> enabledTransitions;
@@ -405,20 +1082,20 @@ public class Fsm {
                         macrostepDone = true;
                     } else {
                         if (StaticOptions.trace_method) {
-                            this.tracer.enter_method(gd.session_id, "internalQueue.dequeue");
+                            gd.tracer.enter_method(gd.session_id, "internalQueue.dequeue");
                         }
                         Event internalEvent = gd.internalQueue.dequeue();
                         if (StaticOptions.trace_method)
-                            this.tracer.exit_method(gd.session_id, "internalQueue.dequeue");
+                            gd.tracer.exit_method(gd.session_id, "internalQueue.dequeue");
                         if (StaticOptions.trace_event)
-                            this.tracer.event_internal_received(gd.session_id, internalEvent);
+                            gd.tracer.event_internal_received(gd.session_id, internalEvent);
                         // TODO: Optimize it, set event only once
                         datamodel.set_event(internalEvent);
                         enabledTransitions = this.selectTransitions(datamodel, internalEvent);
                     }
                 }
                 if (!enabledTransitions.isEmpty()) {
-                    this.microstep(datamodel, enabledTransitions.toList());
+                    this.microstep(datamodel, gd.scratch.toTransitionList(enabledTransitions));
                 }
             }
             // either we're in a final state, and we break out of the loop
@@ -427,133 +1104,114 @@ public class Fsm {
             }
             // or we've completed a macrostep, so we start a new macrostep by waiting for an external event
             // Here we invoke whatever needs to be invoked. The implementation of 'invoke' is platform-specific
-            var sortedStatesToInvoke = gd.statesToInvoke.sort(Fsm.state_entry_order);
-            for (Iterator<State> it = sortedStatesToInvoke.iterator(); it.hasNext(); ) {
-                var state = it.next();
+            // The state set iterates in entry order.
+            for (State state = gd.statesToInvoke.first(); state != null; state = gd.statesToInvoke.next(state)) {
+                if (state.invoke.data.isEmpty())
+                    continue;
                 for (Iterator<Invoke> iter = state.invoke.sort(Fsm.invoke_document_order).iterator(); iter.hasNext(); ) {
                     var inv = iter.next();
                     this.invoke(datamodel, state, inv);
                 }
             }
+            gd.statesToInvoke.clear();
+            // Invoking may have raised internal error events and we iterate to handle them
+            if (gd.internalQueue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            Event externalEvent;
-            {
-
-                gd.statesToInvoke.clear();
-                // Invoking may have raised internal error events and we iterate to handle them
-                if (!gd.internalQueue.isEmpty()) {
-                    continue;
-                }
+    /**
+     * Checks if an external event shall be processed.<br>
+     * <b>W3C says</b>:<br>
+     * Once it cancels the invoked session, the Processor MUST ignore any events
+     * it receives from that session. In particular it MUST NOT not insert them
+     * into the external event queue of the invoking session.
+     */
+    protected boolean acceptExternalEvent(GlobalData gd, Event externalEvent, String caller_invoke_id) {
+        if (externalEvent.name.startsWith(EVENT_DONE_INVOKE_PREFIX)) {
+            return true;
+        }
+        if (externalEvent.invoke_id != null && !caller_invoke_id.equals(externalEvent.invoke_id)) {
+            // Check if the session is active.
+            if (gd.child_sessions.containsKey(externalEvent.invoke_id)) {
+                return true;
+            }
+            if (StaticOptions.debug)
+                Log.debug(
+                        "Ignore event %s from invoke %s",
+                        externalEvent.name, externalEvent.invoke_id
+                );
+            return false;
+        }
+        return true;
+    }
 
-                // W3C says:
-                //   A blocking wait for an external event.  Alternatively, if we have been invoked
-                //   our parent session also might cancel us.  The mechanism for this is platform specific,
-                //   but here we assume it’s a special event we receive
-                if (StaticOptions.trace_method)
-                    this.tracer.enter_method(gd.session_id, "externalQueue.dequeue");
-                while (true) {
-                    var externalEventTmp = gd.externalQueue.dequeue();
-                    if (externalEventTmp == null) {
-                        if (!gd.running) {
-                            externalEvent = null;
-                            break;
-                        }
-                    } else {
-                        if (externalEventTmp.name.startsWith(EVENT_DONE_INVOKE_PREFIX)) {
-                            externalEvent = externalEventTmp;
-                            break;
-                        }
-                        if (externalEventTmp.invoke_id != null) {
-                            if (!caller_invoke_id.equals((externalEventTmp.invoke_id))) {
-                                // W3C says:
-                                //    Once it cancels the invoked session, the Processor MUST ignore any events
-                                //    it receives from that session. In particular it MUST NOT not insert them
-                                //    into the external event queue of the invoking session.
-                                // Check if the session is active.
-                                if (gd.child_sessions.containsKey(externalEventTmp.invoke_id)) {
-                                    externalEvent = externalEventTmp;
-                                    break;
-                                } else {
-                                    if (StaticOptions.debug)
-                                        Log.debug(
-                                                "Ignore event %s from invoke %s",
-                                                externalEventTmp.name, externalEventTmp.invoke_id
-                                        );
-                                }
-                            } else {
-                                externalEvent = externalEventTmp;
-                                break;
-                            }
-                        } else {
-                            externalEvent = externalEventTmp;
-                            break;
-                        }
-                    }
-                }
-                if (StaticOptions.trace_method)
-                    this.tracer.exit_method(gd.session_id, "externalQueue.dequeue");
-                if (StaticOptions.trace_event && externalEvent != null)
-                    this.tracer.event_external_received(gd.session_id, externalEvent);
-                if (this.isCancelEvent(externalEvent)) {
-                    gd.running = false;
-                    continue;
-                }
+    /**
+     * The part of "mainEventLoop" that processes an external event: cancel, finalize, auto-forward and
+     * the microstep.
+     */
+    protected void processExternalEvent(Datamodel datamodel, Event externalEvent) {
+        final var gd = datamodel.global();
+        if (StaticOptions.trace_event && externalEvent != null)
+            gd.tracer.event_external_received(gd.session_id, externalEvent);
+        if (this.isCancelEvent(externalEvent)) {
+            gd.running = false;
+            return;
+        }
 
-                if (externalEvent != null && externalEvent.name.startsWith(EVENT_DONE_INVOKE_PREFIX)) {
-                    if (externalEvent.invoke_id != null) {
-                        gd.child_sessions.remove(externalEvent.invoke_id);
-                    }
-                }
+        if (externalEvent != null && externalEvent.name.startsWith(EVENT_DONE_INVOKE_PREFIX)) {
+            if (externalEvent.invoke_id != null) {
+                gd.child_sessions.remove(externalEvent.invoke_id);
             }
-            java.util.List<ExecutableContent> toFinalize = new ArrayList<>();
-            java.util.List<String> toForward = new ArrayList<>();
-
-            if (externalEvent != null && externalEvent.invoke_id != null) {
-                ScxmlSession session = gd.child_sessions.get(externalEvent.invoke_id);
-                if (session != null) {
-                    // Get state of invokeid
-                    if (session.state != null) {
-                        var invoke_doc_id = session.invoke_doc_id;
-                        for (Iterator<Invoke> it = session.state.invoke.iterator(); it.hasNext(); ) {
-                            var inv = it.next();
-                            if (Objects.equals(inv.doc_id, invoke_doc_id) && inv.finalize != null) {
-                                toFinalize.addAll(inv.finalize.content);
-                            }
-                            if (inv.autoforward) {
-                                toForward.add(externalEvent.invoke_id);
-                            }
+        }
+        final java.util.List<ExecutableContent> toFinalize = gd.scratch.toFinalize;
+        final java.util.List<String> toForward = gd.scratch.toForward;
+        toFinalize.clear();
+        toForward.clear();
+
+        if (externalEvent != null && externalEvent.invoke_id != null) {
+            ScxmlSession session = gd.child_sessions.get(externalEvent.invoke_id);
+            if (session != null) {
+                // Get state of invokeid
+                if (session.state != null) {
+                    var invoke_doc_id = session.invoke_doc_id;
+                    for (Iterator<Invoke> it = session.state.invoke.iterator(); it.hasNext(); ) {
+                        var inv = it.next();
+                        if (Objects.equals(inv.doc_id, invoke_doc_id) && inv.finalize != null) {
+                            toFinalize.addAll(inv.finalize.content);
+                        }
+                        if (inv.autoforward) {
+                            toForward.add(externalEvent.invoke_id);
                         }
                     }
                 }
             }
+        }
 
-            datamodel.set_event(externalEvent);
-            // applyFinalize
-            this.executeContent(datamodel, toFinalize);
-            for (var invokeId : toForward) {
-                // When the 'autoforward' attribute is set to true, the SCXML Processor must send an
-                // exact copy of every external event it receives to the invoked process.
-                // All the fields specified in 5.10.1 The Internal Structure of Events must have the
-                // same values in the forwarded copy of the event. The SCXML Processor must forward
-                // the event at the point at which it removes it from the external event queue of
-                // the invoking session for processing.
-                ScxmlSession session = gd.child_sessions.get(invokeId);
-                if (session == null) {
-                    // TODO: Clarify, communication error?
-                } else {
-                    session.sender.enqueue(externalEvent.get_copy());
-                }
-            }
-
-            enabledTransitions = this.selectTransitions(datamodel, externalEvent);
-            if (!enabledTransitions.isEmpty()) {
-                this.microstep(datamodel, enabledTransitions.toList());
+        datamodel.set_event(externalEvent);
+        // applyFinalize
+        this.executeContent(datamodel, toFinalize);
+        for (int i = 0, n = toForward.size(); i < n; ++i) {
+            final String invokeId = toForward.get(i);
+            // When the 'autoforward' attribute is set to true, the SCXML Processor must send an
+            // exact copy of every external event it receives to the invoked process.
+            // All the fields specified in 5.10.1 The Internal Structure of Events must have the
+            // same values in the forwarded copy of the event. The SCXML Processor must forward
+            // the event at the point at which it removes it from the external event queue of
+            // the invoking session for processing.
+            ScxmlSession session = gd.child_sessions.get(invokeId);
+            if (session == null) {
+                // TODO: Clarify, communication error?
+            } else {
+                session.sender.enqueue(externalEvent.get_copy());
             }
         }
-        // End of outer while running loop.  If we get here, we have reached a top-level final state or have been cancelled
-        this.exitInterpreter(datamodel);
-        if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "mainEventLoop");
+
+        OrderedSet<Transition> enabledTransitions = this.selectTransitions(datamodel, externalEvent);
+        if (!enabledTransitions.isEmpty()) {
+            this.microstep(datamodel, gd.scratch.toTransitionList(enabledTransitions));
         }
     }
 
@@ -583,29 +1241,37 @@ public class Fsm {
     protected void exitInterpreter(Datamodel datamodel) {
         final var gd = datamodel.global();
 
+        if (StaticOptions.trace && this.selection_cache.enabled()) {
+            gd.tracer.trace(gd.session_id, String.format("Transition selection cache: %s, hit rate %.2f",
+                    this.selection_cache, this.selection_cache.getHitRate()));
+        }
+
         gd.final_configuration.clear();
         for (Iterator<State> it = gd.configuration.iterator(); it.hasNext(); ) {
             gd.final_configuration.add(it.next().name);
         }
 
-        List<State> statesToExit = gd
-                .configuration
-                .toList()
-                .sort(Fsm.state_exit_order);
+        // Pending delayed sends would never be executed.
+        for (DelayedSend delayed_send : gd.pending_delayed_send) {
+            delayed_send.stop_timer();
+        }
+        gd.pending_delayed_send.clear();
+        gd.delayed_send.clear();
+
+        // A terminated session needs no recovery.
+        if (gd.journal != null) {
+            gd.journal.delete();
+            gd.journal = null;
+        }
 
         for (var session : gd.child_sessions.values()) {
-            datamodel.send(
-                    ScxmlEventIOProcessor.SCXML_EVENT_PROCESSOR_SHORT_TYPE,
-                    new Data.String(String.format("%s%s", ScxmlEventIOProcessor.SCXML_TARGET_SESSION_ID_PREFIX,
-                            session.session_id)),
-                    Event.new_simple(EVENT_CANCEL_SESSION)
-            );
+            this.cancelSession(session);
         }
 
-        for (Iterator<State> it = statesToExit.iterator(); it.hasNext(); ) {
-            State s = it.next();
+        // Iterate the configuration in exit order.
+        for (State s = gd.configuration.last(); s != null; s = gd.configuration.previous(s)) {
             this.executeContentBlocks(datamodel, s.onexit);
-            gd.configuration.delete(s);
+            this.removeFromConfiguration(gd, s);
             if (this.isFinalState(s) && this.isSCXMLElement(s.parent)) {
                 this.returnDoneEvent(s.donedata, datamodel);
             }
@@ -676,45 +1342,35 @@ public class Fsm {
      */
     protected OrderedSet<Transition> selectEventlessTransitions(Datamodel datamodel) {
         final var gd = datamodel.global();
-        var atomicStates = gd.configuration
-                .toList()
-                .filter_by(this::isAtomicState)
-                .sort(Fsm.state_document_order);
-
         if (StaticOptions.trace_method)
-            this.tracer.enter_method(
-                    gd.session_id, "selectEventlessTransitions", new TraceArgument("atomicStates", atomicStates));
-
-        OrderedSet<Transition> enabledTransitions = new OrderedSet<>();
-
-        List<State> states = new List<>();
-        for (Iterator<State> it = atomicStates.iterator(); it.hasNext(); ) {
-            var sid = it.next();
-            states.data.clear();
-            states.push(sid);
-            states.push_set(this.getProperAncestors(sid, null));
-            java.util.List<Transition> condT = new ArrayList<>();
-            for (Iterator<State> iter = states.iterator(); iter.hasNext(); ) {
-                var state = iter.next();
-                for (Iterator<Transition> iterator = state.transitions
-                        .sort(Fsm.transition_document_order)
-                        .iterator(); iterator.hasNext(); ) {
-                    var t = iterator.next();
-                    if (t.events.isEmpty()) {
-                        condT.add(t);
+            gd.tracer.enter_method(
+                    gd.session_id, "selectEventlessTransitions", new TraceArgument("configuration", gd.configuration));
+
+        // The set is re-used, see ScratchBuffers.
+        OrderedSet<Transition> enabledTransitions = gd.scratch.enabledTransitions;
+        enabledTransitions.clear();
+
+        // The scan is only needed if some active state or ancestor has eventless transitions.
+        if (gd.eventless_count > 0) {
+            // Atomic states of the configuration in document order.
+            for (State state = gd.configuration.first(); state != null; state = gd.configuration.next(state)) {
+                if (!this.isAtomicState(state))
+                    continue;
+                // [state] + getProperAncestors(state, null), eventless transitions are pre-sorted in document order.
+                loop:
+                for (State s = state; s != null; s = s.parent) {
+                    for (Transition t : s.event_dispatch.eventless) {
+                        if (this.eventlessConditionMatch(datamodel, t)) {
+                            enabledTransitions.add(t);
+                            break loop;
+                        }
                     }
                 }
             }
-            for (Transition ct : condT) {
-                if (this.conditionMatch(datamodel, ct)) {
-                    enabledTransitions.add(ct);
-                    break;
-                }
-            }
+            enabledTransitions = this.removeConflictingTransitions(datamodel, enabledTransitions);
         }
-        enabledTransitions = this.removeConflictingTransitions(datamodel, enabledTransitions);
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "selectEventlessTransitions", new TraceArgument("enabledTransitions", enabledTransitions));
+            gd.tracer.exit_method(gd.session_id, "selectEventlessTransitions", new TraceArgument("enabledTransitions", enabledTransitions));
         }
         return enabledTransitions;
     }
@@ -750,40 +1406,74 @@ public class Fsm {
         final GlobalData gd = datamodel.global();
 
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "selectTransitions");
-        }
-
-        OrderedSet<Transition> enabledTransitions = new OrderedSet<>();
-        var atomicStates = gd.configuration.toList()
-                .filter_by(this::isAtomicState)
-                .sort(Fsm.state_document_order);
-        for (State state : atomicStates.data) {
-            java.util.List<Transition> condT = new ArrayList<>();
-            for (State s : List.from_array(new State[]{state})
-                    .append_set(this.getProperAncestors(state, null))
-                    .data) {
-                java.util.List<Transition> transition = new ArrayList<>(s.transitions.data);
-                transition.sort(Fsm.transition_document_order);
-                for (Transition t : transition) {
-                    if ((!t.events.isEmpty()) && t.nameMatch(event.name)) {
-                        condT.add(t);
+            gd.tracer.enter_method(gd.session_id, "selectTransitions");
+        }
+
+        // The set is re-used, see ScratchBuffers.
+        OrderedSet<Transition> enabledTransitions = gd.scratch.enabledTransitions;
+        enabledTransitions.clear();
+        // Optional: for condition-free candidates the result is cached per configuration and event name.
+        TransitionSelectionCache.Key key = null;
+        boolean cached = false;
+        if (event != null && this.selection_cache.enabled()) {
+            key = gd.scratch.selectionKey;
+            key.set(event.name, gd.configuration);
+            final Transition[] selected = this.selection_cache.get(key);
+            if (selected != null) {
+                enabledTransitions = gd.scratch.filteredTransitions;
+                enabledTransitions.clear();
+                Collections.addAll(enabledTransitions.data, selected);
+                cached = true;
+            }
+        }
+        if (!cached) {
+            // True as long as only candidates without condition were checked.
+            boolean cond_free = true;
+            if (event != null) {
+                // The candidates are taken from the compiled dispatch index of the states (see EventDispatchIndex),
+                // that replaces the "nameMatch" test and the sorting of the transitions.
+                final String[] prefixes = gd.scratch.token_prefixes(event.name);
+                // Atomic states of the configuration in document order.
+                for (State state = gd.configuration.first(); state != null; state = gd.configuration.next(state)) {
+                    if (!this.isAtomicState(state))
+                        continue;
+                    // [state] + getProperAncestors(state, null)
+                    loop:
+                    for (State s = state; s != null; s = s.parent) {
+                        for (Transition t : s.event_dispatch.lookup(prefixes)) {
+                            if (!(t.cond == null || t.cond.is_empty()))
+                                cond_free = false;
+                            if (this.conditionMatch(datamodel, t)) {
+                                enabledTransitions.add(t);
+                                break loop;
+                            }
+                        }
                     }
                 }
             }
-            for (Transition ct : condT) {
-                if (this.conditionMatch(datamodel, ct)) {
-                    enabledTransitions.add(ct);
-                    break;
-                }
+            enabledTransitions = this.removeConflictingTransitions(datamodel, enabledTransitions);
+            if (key != null && cond_free && this.isSelectionCacheable(enabledTransitions)) {
+                this.selection_cache.put(key.copy(), enabledTransitions.data.toArray(new Transition[0]));
             }
         }
-        enabledTransitions = this.removeConflictingTransitions(datamodel, enabledTransitions);
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "selectTransitions", new TraceArgument("enabledTransitions", enabledTransitions));
+            gd.tracer.exit_method(gd.session_id, "selectTransitions", new TraceArgument("enabledTransitions", enabledTransitions));
         }
         return enabledTransitions;
     }
 
+    /**
+     * Checks if a selection can be stored in {@link #selection_cache}. The exit sets of transitions to history
+     * states (and with them the conflict resolution) depend on the history values.
+     */
+    protected boolean isSelectionCacheable(OrderedSet<Transition> enabledTransitions) {
+        for (int i = 0, n = enabledTransitions.data.size(); i < n; ++i) {
+            if (this.hasHistoryTarget(enabledTransitions.data.get(i)))
+                return false;
+        }
+        return true;
+    }
+
     /**
      * <b>W3C says</b>:<br>
      * <b>function removeConflictingTransitions(enabledTransitions)</b><br>
@@ -842,15 +1532,37 @@ public class Fsm {
     protected OrderedSet<Transition> removeConflictingTransitions(
             Datamodel datamodel, OrderedSet<Transition> enabledTransitions) {
 
-        OrderedSet<Transition> filteredTransitions = new OrderedSet<>();
-        //toList sorts the transitions in the order of the states that selected them
-        for (Transition t1 : enabledTransitions.toList().data) {
+        final ScratchBuffers scratch = datamodel.global().scratch;
+        // The sets are re-used and not modified while iterated, so no copies ("toList") are needed.
+        OrderedSet<Transition> filteredTransitions = scratch.filteredTransitions;
+        filteredTransitions.clear();
+        final java.util.List<Transition> enabled = enabledTransitions.data;
+        final java.util.List<Transition> filtered = filteredTransitions.data;
+        if (enabled.size() == 1) {
+            filtered.add(enabled.get(0));
+            return filteredTransitions;
+        }
+        // The exit set of each transition is computed only once and kept at the same index as the transition
+        // in "filtered". The exit sets of the filtered transitions are disjoint, so a transition that doesn't
+        // intersect with their union can't conflict with any of them and the pairwise checks are only needed
+        // for real conflicts. Targetless transitions have empty exit sets and never conflict.
+        final StateSet union = scratch.exitSetUnion;
+        union.clear();
+        final OrderedSet<Transition> transitionsToRemove = scratch.transitionsToRemove;
+        for (int i1 = 0, n1 = enabled.size(); i1 < n1; ++i1) {
+            final Transition t1 = enabled.get(i1);
+            int n2 = filtered.size();
+            final StateSet exitSet1 = this.computeExitSet(datamodel, t1, scratch.exitSet(n2));
+            if (!exitSet1.hasIntersection(union)) {
+                filtered.add(t1);
+                union.union(exitSet1);
+                continue;
+            }
             boolean t1Preempted = false;
-            OrderedSet<Transition> transitionsToRemove = new OrderedSet<>();
-            var filteredTransitionList = filteredTransitions.toList();
-            for (Transition t2 : filteredTransitionList.data) {
-                if (this.computeExitSet(datamodel, List.from_array(new Transition[]{t1}))
-                        .hasIntersection(this.computeExitSet(datamodel, List.from_array(new Transition[]{t2})))) {
+            transitionsToRemove.clear();
+            for (int i2 = 0; i2 < n2; ++i2) {
+                final Transition t2 = filtered.get(i2);
+                if (exitSet1.hasIntersection(scratch.exitSet(i2))) {
                     if (this.isDescendant(t1.source, t2.source)) {
                         transitionsToRemove.add(t2);
                     } else {
@@ -860,10 +1572,22 @@ public class Fsm {
                 }
             }
             if (!t1Preempted) {
-                for (Transition t3 : transitionsToRemove.toList().data) {
-                    filteredTransitions.delete(t3);
+                // Remove the preempted transitions together with their exit sets.
+                int w = 0;
+                for (int i3 = 0; i3 < n2; ++i3) {
+                    final Transition t3 = filtered.get(i3);
+                    if (transitionsToRemove.isMember(t3)) {
+                        union.subtract(scratch.exitSet(i3));
+                    } else {
+                        filtered.set(w, t3);
+                        scratch.swapExitSets(w++, i3);
+                    }
                 }
-                filteredTransitions.add(t1);
+                while (filtered.size() > w)
+                    filtered.remove(filtered.size() - 1);
+                scratch.swapExitSets(w, n2);
+                filtered.add(t1);
+                union.union(exitSet1);
             }
         }
         return filteredTransitions;
@@ -891,7 +1615,7 @@ public class Fsm {
      */
     protected void microstep(Datamodel datamodel, List<Transition> enabledTransitions) {
         if (StaticOptions.trace_method)
-            this.tracer.enter_method(datamodel.global().session_id, "microstep");
+            datamodel.global().tracer.enter_method(datamodel.global().session_id, "microstep");
         if (StaticOptions.debug) {
             if (enabledTransitions.size() > 0) {
                 if (enabledTransitions.size() > 1) {
@@ -904,11 +1628,54 @@ public class Fsm {
                 }
             }
         }
-        this.exitStates(datamodel, enabledTransitions);
-        this.executeTransitionContent(datamodel, enabledTransitions);
-        this.enterStates(datamodel, enabledTransitions);
+        var plan = this.getTransitionPlan(datamodel, enabledTransitions);
+        if (plan == null) {
+            this.exitStates(datamodel, enabledTransitions);
+            this.executeTransitionContent(datamodel, enabledTransitions);
+            this.enterStates(datamodel, enabledTransitions);
+        } else {
+            this.exitStates(datamodel, plan.statesToExit);
+            this.executeTransitionContent(datamodel, enabledTransitions);
+            this.enterStates(datamodel, plan.statesToEnter, plan.statesForDefaultEntry, datamodel.global().scratch.emptyHistoryContent);
+        }
         if (StaticOptions.trace_method)
-            this.tracer.exit_method(datamodel.global().session_id, "microstep");
+            datamodel.global().tracer.exit_method(datamodel.global().session_id, "microstep");
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Gets the precomputed exit and entry sets for the transitions from {@link #plan_cache} or computes and stores them.<br>
+     * The sets depend only on the transitions and the current configuration as long as no history state is involved.
+     * Transitions with history targets are not cached, same for entries that reach a history state via some default
+     * initial transition (marked in the cache as not cacheable).
+     *
+     * @return The plan or null if the microstep needs to be computed step by step.
+     */
+    protected @Nullable TransitionPlanCache.Plan getTransitionPlan(Datamodel datamodel, List<Transition> enabledTransitions) {
+        if (!this.plan_cache.enabled())
+            return null;
+        for (int i = 0, n = enabledTransitions.data.size(); i < n; ++i) {
+            if (this.hasHistoryTarget(enabledTransitions.data.get(i)))
+                return null;
+        }
+        final GlobalData gd = datamodel.global();
+        // The key is re-used to probe the cache and only copied if a new plan is stored.
+        final TransitionPlanCache.Key key = gd.scratch.planKey;
+        key.set(enabledTransitions, gd.configuration);
+        var plan = this.plan_cache.get(key);
+        if (plan == null) {
+            StateSet statesToEnter = new StateSet();
+            StateSet statesForDefaultEntry = new StateSet();
+            HashTable<State, ExecutableContentBlock> defaultHistoryContent = new HashTable<>();
+            this.computeEntrySet(datamodel, enabledTransitions, statesToEnter, statesForDefaultEntry, defaultHistoryContent);
+            boolean cacheable = statesForDefaultEntry.every(
+                    s -> s.initial == null || s.initial.target.stream().noneMatch(this::isHistoryState));
+            plan = cacheable
+                    ? new TransitionPlanCache.Plan(this.computeExitSet(datamodel, enabledTransitions), statesToEnter, statesForDefaultEntry)
+                    : TransitionPlanCache.NOT_CACHEABLE;
+            this.plan_cache.put(key.copy(), plan);
+        }
+        return plan == TransitionPlanCache.NOT_CACHEABLE ? null : plan;
     }
 
     /**
@@ -953,59 +1720,72 @@ public class Fsm {
         final GlobalData gd = datamodel.global();
 
         if (StaticOptions.trace_method)
-            this.tracer.enter_method(gd.session_id, "exitStates");
+            gd.tracer.enter_method(gd.session_id, "exitStates");
 
 
-        var statesToExit = this.computeExitSet(datamodel, enabledTransitions);
-        for (State s : statesToExit.data) {
+        this.exitStates(datamodel, this.computeExitSet(datamodel, enabledTransitions));
+        if (StaticOptions.trace_method)
+            gd.tracer.exit_method(gd.session_id, "exitStates");
+    }
+
+    /**
+     * Part of {@link #exitStates(Datamodel, List)} after the exit set was computed.
+     */
+    protected void exitStates(Datamodel datamodel, StateSet statesToExit) {
+        final GlobalData gd = datamodel.global();
+        if (!statesToExit.isEmpty())
+            gd.modified();
+
+        for (State s = statesToExit.first(); s != null; s = statesToExit.next(s)) {
             gd.statesToInvoke.delete(s);
         }
-        statesToExit = statesToExit.sort(Fsm.state_exit_order);
 
-        HashTable<State, OrderedSet<State>> ahistory = new HashTable<>();
-        var configStateList = gd.configuration.toList();
-
-        for (State s : statesToExit.data) {
-            for (var h : s.history.data) {
+        // The configuration is not modified until all history values are recorded,
+        // so the values can be directly stored.
+        // Iteration in reverse document order is the exit order.
+        for (State s = statesToExit.last(); s != null; s = statesToExit.previous(s)) {
+            for (int hi = 0, hn = s.history.data.size(); hi < hn; ++hi) {
+                final State h = s.history.data.get(hi);
+                // Sets of history values are not shared, so an existing value can be re-used.
+                StateSet hv = gd.historyValue.get(h);
+                if (hv == null) {
+                    hv = new StateSet();
+                    gd.historyValue.put(h, hv);
+                } else {
+                    hv.clear();
+                }
                 if (h.history_type == HistoryType.Deep) {
-                    OrderedSet<State> stateIdList = configStateList
-                            .filter_by(s0 -> this.isAtomicState(s0) && this.isDescendant(s0, s)).to_set();
-                    ahistory.put(h, stateIdList);
+                    for (State s0 = gd.configuration.first(); s0 != null; s0 = gd.configuration.next(s0)) {
+                        if (this.isAtomicState(s0) && this.isDescendant(s0, s))
+                            hv.add(s0);
+                    }
                 } else {
-                    var fl = gd.configuration
-                            .toList()
-                            .filter_by(s0 -> s0.parent == s).to_set();
-                    ahistory.put(h, fl);
+                    for (State s0 = gd.configuration.first(); s0 != null; s0 = gd.configuration.next(s0)) {
+                        if (s0.parent == s)
+                            hv.add(s0);
+                    }
                 }
             }
         }
 
-        gd.historyValue.put_all(ahistory);
-
-        for (State s : statesToExit.data) {
-            // Use the document-id of Invoke to identify sessions to cancel.
-            HashSet<Integer> invoke_doc_ids = new HashSet<>();
-            List<ExecutableContentBlock> exitList = new List<>();
+        for (State s = statesToExit.last(); s != null; s = statesToExit.previous(s)) {
             if (StaticOptions.trace_state)
-                this.tracer.trace_exit_state(gd.session_id, s);
-            for (var inv : s.invoke.data) {
-                invoke_doc_ids.add(inv.doc_id);
-            }
-            for (var ec : s.onexit) {
-                exitList.push(ec);
-            }
-            if (!invoke_doc_ids.isEmpty()) {
-                for (var item : gd.child_sessions.entrySet()) {
+                gd.tracer.trace_exit_state(gd.session_id, s);
+            // Use the document-id of Invoke to identify sessions to cancel.
+            if (!(s.invoke.data.isEmpty() || gd.child_sessions.isEmpty())) {
+                HashSet<Integer> invoke_doc_ids = new HashSet<>();
+                for (var inv : s.invoke.data) {
+                    invoke_doc_ids.add(inv.doc_id);
+                }
+                for (var item : new ArrayList<>(gd.child_sessions.entrySet())) {
                     if (invoke_doc_ids.contains(item.getValue().invoke_doc_id)) {
                         this.cancelInvoke(datamodel, item.getKey(), item.getValue());
                     }
                 }
             }
-            this.executeContentBlocks(datamodel, exitList.data);
-            gd.configuration.delete(s);
+            this.executeContentBlocks(datamodel, s.onexit);
+            this.removeFromConfiguration(gd, s);
         }
-        if (StaticOptions.trace_method)
-            this.tracer.exit_method(gd.session_id, "exitStates");
     }
 
     /**
@@ -1057,39 +1837,52 @@ public class Fsm {
         final var gd = datamodel.global();
 
         if (StaticOptions.trace_method)
-            this.tracer.enter_method(gd.session_id, "enterStates");
+            gd.tracer.enter_method(gd.session_id, "enterStates");
 
-        OrderedSet<State> statesToEnter = new OrderedSet<>();
-        OrderedSet<State> statesForDefaultEntry = new OrderedSet<>();
+        StateSet statesToEnter = new StateSet();
+        StateSet statesForDefaultEntry = new StateSet();
 
         // initialize the temporary table for default content in history states
         HashTable<State, ExecutableContentBlock> defaultHistoryContent = new HashTable<>();
         this.computeEntrySet(datamodel, enabledTransitions, statesToEnter, statesForDefaultEntry, defaultHistoryContent);
-        for (State s : statesToEnter.toList().sort(Fsm.state_entry_order).data) {
+        this.enterStates(datamodel, statesToEnter, statesForDefaultEntry, defaultHistoryContent);
+        if (StaticOptions.trace_method)
+            gd.tracer.exit_method(gd.session_id, "enterStates");
+    }
+
+    /**
+     * Part of {@link #enterStates(Datamodel, List)} after the entry set was computed.
+     */
+    protected void enterStates(Datamodel datamodel, StateSet statesToEnter, StateSet statesForDefaultEntry,
+                               HashTable<State, ExecutableContentBlock> defaultHistoryContent) {
+        final var gd = datamodel.global();
+        if (!statesToEnter.isEmpty())
+            gd.modified();
+
+        // The state set iterates in entry order.
+        for (State s = statesToEnter.first(); s != null; s = statesToEnter.next(s)) {
             if (StaticOptions.trace_state)
-                this.tracer.trace_enter_state(gd.session_id, s);
-            gd.configuration.add(s);
+                gd.tracer.trace_enter_state(gd.session_id, s);
+            this.addToConfiguration(gd, s);
             gd.statesToInvoke.add(s);
             State to_init = null;
             {
-                if (this.binding == BindingType.Late && s.isFirstEntry) {
+                if (this.binding == BindingType.Late && !gd.initializedStates.isMember(s)) {
                     to_init = s;
-                    s.isFirstEntry = false;
+                    gd.initializedStates.add(s);
                 }
             }
             if (to_init != null) {
                 datamodel.initializeDataModel(this, to_init, true);
             }
-            java.util.List<ExecutableContentBlock> exe = new ArrayList<>(s.onentry);
-            if (statesForDefaultEntry.isMember(s) && s.initial != null && s.initial.content != null) {
-                exe.add(s.initial.content);
+            this.executeContentBlocks(datamodel, s.onentry);
+            if (statesForDefaultEntry.isMember(s) && s.initial != null) {
+                this.executeContent(datamodel, s.initial.content);
             }
             if (defaultHistoryContent.has(s)) {
-                exe.add(defaultHistoryContent.get(s));
+                this.executeContent(datamodel, defaultHistoryContent.get(s));
             }
 
-            this.executeContentBlocks(datamodel, exe);
-
             if (this.isFinalState(s)) {
                 State parent = s.parent;
                 if (this.isSCXMLElement(parent)) {
@@ -1114,8 +1907,9 @@ public class Fsm {
                                     EventType.external)
                     );
                     State grandparent = (parent == null) ? null : parent.parent;
-                    if (grandparent != null && grandparent.is_parallel &&
-                            this.getChildStates(grandparent).every((state) -> this.isInFinalState(datamodel, state))) {
+                    // For parallel states "isInFinalState" is the same as
+                    // "getChildStates(grandparent).every(isInFinalState)", but uses the counters of completed regions.
+                    if (grandparent != null && grandparent.is_parallel && this.isInFinalState(datamodel, grandparent)) {
                         this.enqueue_internal(
                                 datamodel,
                                 // TODO: EventType::external ?
@@ -1126,8 +1920,6 @@ public class Fsm {
                 }
             }
         }
-        if (StaticOptions.trace_method)
-            this.tracer.exit_method(gd.session_id, "enterStates");
     }
 
     /**
@@ -1139,8 +1931,8 @@ public class Fsm {
 
     protected void executeContentBlocks(@NotNull Datamodel datamodel, @Nullable java.util.List<ExecutableContentBlock> blocks) {
         if (blocks != null)
-            for (var block : blocks)
-                executeContent(datamodel, block);
+            for (int i = 0, n = blocks.size(); i < n; ++i)
+                executeContent(datamodel, blocks.get(i));
     }
 
 
@@ -1151,8 +1943,8 @@ public class Fsm {
 
     protected void executeContent(@NotNull Datamodel datamodel, @Nullable java.util.List<ExecutableContent> content) {
         if (content != null)
-            for (var ct : content)
-                if (!executeContent(datamodel, ct))
+            for (int i = 0, n = content.size(); i < n; ++i)
+                if (!executeContent(datamodel, content.get(i)))
                     return;
     }
 
@@ -1161,12 +1953,12 @@ public class Fsm {
         final int session_id = datamodel.global().session_id;
         if (content != null) {
             if (StaticOptions.trace_method) {
-                this.tracer.enter_method(session_id, "executeContent",
+                datamodel.global().tracer.enter_method(session_id, "executeContent",
                         new TraceArgument("content", content));
             }
             boolean r = datamodel.executeContent(this, content);
             if (StaticOptions.trace_method) {
-                this.tracer.exit_method(session_id, "executeContent", new TraceArgument("result", r));
+                datamodel.global().tracer.exit_method(session_id, "executeContent", new TraceArgument("result", r));
             }
             return r;
         } else {
@@ -1205,29 +1997,48 @@ public class Fsm {
      *     return statesToExit;
      * </pre>
      */
-    protected OrderedSet<State> computeExitSet(Datamodel datamodel, List<Transition> transitions) {
+    protected StateSet computeExitSet(Datamodel datamodel, List<Transition> transitions) {
         final var gd = datamodel.global();
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "computeExitSet",
+            gd.tracer.enter_method(gd.session_id, "computeExitSet",
                     new TraceArgument("transitions", transitions));
         }
-        OrderedSet<State> statesToExit = new OrderedSet<>();
-        for (var t : transitions.data) {
-            if (!t.target.isEmpty()) {
-                State domain = this.getTransitionDomain(datamodel, t);
-                for (var s : gd.configuration.data) {
-                    if (this.isDescendant(s, domain)) {
-                        statesToExit.add(s);
-                    }
-                }
-            }
+        StateSet statesToExit = new StateSet();
+        for (int i = 0, n = transitions.data.size(); i < n; ++i) {
+            this.addExitSet(datamodel, transitions.data.get(i), statesToExit);
         }
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "computeExitSet", new TraceArgument("statesToExit", statesToExit));
+            gd.tracer.exit_method(gd.session_id, "computeExitSet", new TraceArgument("statesToExit", statesToExit));
         }
         return statesToExit;
     }
 
+    /**
+     * Variant of {@link #computeExitSet(Datamodel, List)} for a single transition.
+     *
+     * @param statesToExit The set to use for the result, it is cleared first.
+     */
+    protected StateSet computeExitSet(Datamodel datamodel, Transition t, StateSet statesToExit) {
+        statesToExit.clear();
+        this.addExitSet(datamodel, t, statesToExit);
+        return statesToExit;
+    }
+
+    /**
+     * Adds the states of the current configuration that are exited by the transition.
+     */
+    protected void addExitSet(Datamodel datamodel, Transition t, StateSet statesToExit) {
+        if (!t.target.isEmpty()) {
+            final StateSet configuration = datamodel.global().configuration;
+            State domain = this.getTransitionDomain(datamodel, t);
+            for (State s = configuration.first(); s != null; s = configuration.next(s)) {
+                if (this.isDescendant(s, domain)) {
+                    statesToExit.add(s);
+                }
+            }
+        }
+    }
+
     /**
      * <b>W3C says</b>:<br>
      * <b>procedure executeTransitionContent(enabledTransitions)</b><br>
@@ -1267,13 +2078,13 @@ public class Fsm {
     protected void computeEntrySet(
             Datamodel datamodel,
             List<Transition> transitions,
-            OrderedSet<State> statesToEnter,
-            OrderedSet<State> statesForDefaultEntry,
+            StateSet statesToEnter,
+            StateSet statesForDefaultEntry,
             HashTable<State, ExecutableContentBlock> defaultHistoryContent
     ) {
         int session_id = datamodel.global().session_id;
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(session_id, "computeEntrySet",
+            datamodel.global().tracer.enter_method(session_id, "computeEntrySet",
                     new TraceArgument("transitions", transitions));
         }
         for (Transition t : transitions.data) {
@@ -1287,7 +2098,7 @@ public class Fsm {
                 );
             }
             var ancestor = this.getTransitionDomain(datamodel, t);
-            for (State s : this.getEffectiveTargetStates(datamodel, t).data) {
+            for (State s : this.getEffectiveTargetStates(datamodel, t)) {
                 this.addAncestorStatesToEnter(
                         datamodel,
                         s,
@@ -1299,7 +2110,7 @@ public class Fsm {
             }
         }
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(session_id, "computeEntrySet", new TraceArgument("statesToEnter", statesToEnter));
+            datamodel.global().tracer.exit_method(session_id, "computeEntrySet", new TraceArgument("statesToEnter", statesToEnter));
         }
     }
 
@@ -1351,19 +2162,19 @@ public class Fsm {
     protected void addDescendantStatesToEnter(
             Datamodel datamodel,
             State state,
-            OrderedSet<State> statesToEnter,
-            OrderedSet<State> statesForDefaultEntry,
+            StateSet statesToEnter,
+            StateSet statesForDefaultEntry,
             HashTable<State, ExecutableContentBlock> defaultHistoryContent
     ) {
         final var gd = datamodel.global();
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "addDescendantStatesToEnter",
+            gd.tracer.enter_method(gd.session_id, "addDescendantStatesToEnter",
                     new TraceArgument("State", state));
         }
         if (this.isHistoryState(state)) {
             var hv = gd.historyValue.get(state);
             if (hv != null) {
-                for (State s : hv.data) {
+                for (State s : hv) {
                     this.addDescendantStatesToEnter(
                             datamodel,
                             s,
@@ -1372,7 +2183,7 @@ public class Fsm {
                             defaultHistoryContent
                     );
                 }
-                for (State s : hv.data) {
+                for (State s : hv) {
                     this.addAncestorStatesToEnter(
                             datamodel,
                             s,
@@ -1447,7 +2258,7 @@ public class Fsm {
             }
         }
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "addDescendantStatesToEnter", new TraceArgument("statesToEnter", statesToEnter));
+            gd.tracer.exit_method(gd.session_id, "addDescendantStatesToEnter", new TraceArgument("statesToEnter", statesToEnter));
         }
     }
 
@@ -1468,16 +2279,20 @@ public class Fsm {
     protected void addAncestorStatesToEnter(
             Datamodel datamodel,
             State state, State ancestor,
-            OrderedSet<State> statesToEnter,
-            OrderedSet<State> statesForDefaultEntry,
+            StateSet statesToEnter,
+            StateSet statesForDefaultEntry,
             HashTable<State, ExecutableContentBlock> defaultHistoryContent
     ) {
         final int trace_sessionId = StaticOptions.trace_method ? datamodel.global().session_id : -1;
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(trace_sessionId, "addAncestorStatesToEnter",
+            datamodel.global().tracer.enter_method(trace_sessionId, "addAncestorStatesToEnter",
                     new TraceArgument("state", state));
         }
-        for (var anc : this.getProperAncestors(state, ancestor).data) {
+        // getProperAncestors(state, ancestor) without creating the set.
+        final State[] ancestors = state.ancestors;
+        final int end = this.getProperAncestorsEnd(state, ancestor);
+        for (int i = state.depth - 1; i >= end; --i) {
+            final State anc = ancestors[i];
             statesToEnter.add(anc);
             if (anc.is_parallel) {
                 for (var child : anc.states) {
@@ -1494,7 +2309,7 @@ public class Fsm {
             }
         }
         if (StaticOptions.trace_method)
-            this.tracer.exit_method(trace_sessionId, "addAncestorStatesToEnter");
+            datamodel.global().tracer.exit_method(trace_sessionId, "addAncestorStatesToEnter");
     }
 
     /**
@@ -1518,13 +2333,63 @@ public class Fsm {
             final GlobalData gd = datamodel.global();
             return this.getChildStates(s).some(cs -> this.isFinalState(cs) && gd.configuration.isMember(cs));
         } else if (s.is_parallel) {
-            return this.getChildStates(s)
-                    .every(cs -> this.isInFinalState(datamodel, cs));
+            // All children are in final state if all regions are completed, see addToConfiguration.
+            final int[] completed = datamodel.global().completed_regions;
+            return s.doc_index < completed.length && completed[s.doc_index] == s.states.size();
         } else {
             return false;
         }
     }
 
+    /**
+     * Extension: Adds a state to the configuration and updates the counters that are derived from the configuration
+     * ({@link GlobalData#eventless_count} and {@link GlobalData#completed_regions}).
+     */
+    protected void addToConfiguration(GlobalData gd, State s) {
+        if (!gd.configuration.isMember(s)) {
+            gd.configuration.add(s);
+            if (this.isAtomicState(s))
+                gd.eventless_count += s.eventless_count;
+            this.updateCompletedRegions(gd, s, 1);
+        }
+    }
+
+    /**
+     * Extension: Removes a state from the configuration, see {@link #addToConfiguration(GlobalData, State)}.
+     */
+    protected void removeFromConfiguration(GlobalData gd, State s) {
+        if (gd.configuration.isMember(s)) {
+            gd.configuration.delete(s);
+            if (this.isAtomicState(s))
+                gd.eventless_count -= s.eventless_count;
+            this.updateCompletedRegions(gd, s, -1);
+        }
+    }
+
+    /**
+     * Updates the counters of completed regions if a final state enters (delta 1) or leaves (delta -1) the
+     * configuration.<br>
+     * The region (the parent of the final state) is then in final state and counts for its parallel parent.
+     * If the parallel state gets complete (or no longer complete) by this, the change is propagated to the
+     * next parallel ancestor in the same way.
+     */
+    private void updateCompletedRegions(GlobalData gd, State s, int delta) {
+        if (!s.is_final || !this.isCompoundState(s.parent))
+            return;
+        State parallel = s.parent.parent;
+        while (parallel != null && parallel.is_parallel) {
+            final int idx = parallel.doc_index;
+            if (idx >= gd.completed_regions.length)
+                gd.completed_regions = Arrays.copyOf(gd.completed_regions, Math.max(idx + 1, 2 * gd.completed_regions.length));
+            final int regions = parallel.states.size();
+            final boolean wasCompleted = gd.completed_regions[idx] == regions;
+            gd.completed_regions[idx] += delta;
+            if (wasCompleted == (gd.completed_regions[idx] == regions))
+                break;
+            parallel = parallel.parent;
+        }
+    }
+
     /**
      * <b>W3C says</b>:<br>
      * <b>function getTransitionDomain(transition)</b><br>
@@ -1548,24 +2413,25 @@ public class Fsm {
         final int trace_sessionId = StaticOptions.trace_method ? datamodel.global().session_id : -1;
 
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(trace_sessionId, "getTransitionDomain",
+            datamodel.global().tracer.enter_method(trace_sessionId, "getTransitionDomain",
                     new TraceArgument("t", t));
         }
-        var tstates = this.getEffectiveTargetStates(datamodel, t);
+        // Without history targets, the effective targets are the targets. This avoids a temporary set.
+        final java.util.List<State> tstates = this.hasHistoryTarget(t)
+                ? this.getEffectiveTargetStates(datamodel, t).toList().data
+                : t.target;
         State domain;
         if (tstates.isEmpty()) {
             domain = null;
         } else if (t.transition_type == TransitionType.Internal
                 && this.isCompoundState(t.source)
-                && tstates.every((s) -> this.isDescendant(s, t.source))) {
+                && this.allDescendants(tstates, t.source)) {
             domain = t.source;
         } else {
-            List<State> l = new List<>();
-            l.push(t.source);
-            domain = this.findLCCA(l.append_set(tstates));
+            domain = this.findLCCA(t.source, tstates);
         }
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(trace_sessionId, "getTransitionDomain", new TraceArgument("domain", domain));
+            datamodel.global().tracer.exit_method(trace_sessionId, "getTransitionDomain", new TraceArgument("domain", domain));
         }
         return domain;
     }
@@ -1586,16 +2452,44 @@ public class Fsm {
      * </pre>
      */
     protected State findLCCA(List<State> stateList) {
+        return this.findLCCA(stateList.head(), stateList.tail().data);
+    }
 
-        State lcca = null;
-        for (var anc : this.getProperAncestors(stateList.head(), null).toList()
-                .filter_by(this::isCompoundStateOrScxmlElement).data) {
-            if (stateList.tail().every(s -> this.isDescendant(s, anc))) {
-                lcca = anc;
-                break;
+    /**
+     * Variant of {@link #findLCCA(List)} with the head and tail of the list given separately.<br>
+     * Walks the ancestor array of the head, the descendant checks are simple compares.
+     */
+    protected State findLCCA(State head, java.util.List<State> tail) {
+        final State[] ancestors = head.ancestors;
+        for (int i = head.depth - 1; i >= 0; --i) {
+            final State anc = ancestors[i];
+            if (this.isCompoundStateOrScxmlElement(anc) && this.allDescendants(tail, anc)) {
+                return anc;
             }
         }
-        return lcca;
+        return null;
+    }
+
+    /**
+     * Checks if all states are descendants of "ancestor".
+     */
+    protected boolean allDescendants(java.util.List<State> states, State ancestor) {
+        for (int i = 0, n = states.size(); i < n; ++i) {
+            if (!this.isDescendant(states.get(i), ancestor))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if some target of the transition is a history state.
+     */
+    protected boolean hasHistoryTarget(Transition t) {
+        for (int i = 0, n = t.target.size(); i < n; ++i) {
+            if (this.isHistoryState(t.target.get(i)))
+                return true;
+        }
+        return false;
     }
 
     /**
@@ -1616,13 +2510,13 @@ public class Fsm {
      *     return targets;
      * </pre>
      */
-    protected OrderedSet<State> getEffectiveTargetStates(Datamodel datamodel, Transition transition) {
+    protected StateSet getEffectiveTargetStates(Datamodel datamodel, Transition transition) {
         final var gd = datamodel.global();
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "getEffectiveTargetStates",
+            gd.tracer.enter_method(gd.session_id, "getEffectiveTargetStates",
                     new TraceArgument("transition", transition));
         }
-        OrderedSet<State> targets = new OrderedSet<>();
+        StateSet targets = new StateSet();
         for (State state : transition.target) {
             if (this.isHistoryState(state)) {
                 if (gd.historyValue.has(state)) {
@@ -1636,7 +2530,7 @@ public class Fsm {
             }
         }
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "getEffectiveTargetStates", new TraceArgument("targets", targets));
+            gd.tracer.exit_method(gd.session_id, "getEffectiveTargetStates", new TraceArgument("targets", targets));
         }
         return targets;
     }
@@ -1654,33 +2548,40 @@ public class Fsm {
      */
     protected OrderedSet<State> getProperAncestors(@NotNull State state1, @Nullable State state2) {
         OrderedSet<State> properAncestors = new OrderedSet<>();
-        if (!this.isDescendant(state2, state1)) {
-            State currState = state1.parent;
-            while (currState != null && currState != state2) {
-                properAncestors.add(currState);
-                currState = currState.parent;
-            }
+        final int end = this.getProperAncestorsEnd(state1, state2);
+        for (int i = state1.depth - 1; i >= end; --i) {
+            properAncestors.data.add(state1.ancestors[i]);
         }
         return properAncestors;
     }
 
+    /**
+     * Gets the index in "state1.ancestors" where {@link #getProperAncestors(State, State)} stops.
+     * The proper ancestors are "state1.ancestors[depth-1]" down to this index.
+     */
+    protected int getProperAncestorsEnd(@NotNull State state1, @Nullable State state2) {
+        if (state2 == null) {
+            return 0;
+        } else if (this.isDescendant(state1, state2)) {
+            return state2.depth + 1;
+        } else if (this.isDescendant(state2, state1)) {
+            return state1.depth;
+        } else {
+            return 0;
+        }
+    }
+
     /**
      * <b>W3C says</b>:<br>
      * function isDescendant(state1, state2)
-     * Returns 'true' if state1 is a descendant of state2 (a child, or a child of a child, or a child of a child of a child, etc.) Otherwise returns 'false'.
+     * Returns 'true' if state1 is a descendant of state2 (a child, or a child of a child, or a child of a child of a child, etc.) Otherwise returns 'false'.<br>
+     * <br>
+     * <b>Actual implementation:</b><br>
+     * Uses the pre-/post-order indices created by {@link #prepare_model()}.
      */
     protected boolean isDescendant(State state1, State state2) {
-        boolean result;
-        if (state1 == null || state2 == null || state1 == state2) {
-            result = false;
-        } else {
-            State currState = state1.parent;
-            while (currState != null && currState != state2) {
-                currState = currState.parent;
-            }
-            result = (currState == state2);
-        }
-        return result;
+        return state1 != null && state2 != null
+                && state2.pre_order < state1.pre_order && state1.post_order < state2.post_order;
     }
 
     /**
@@ -1713,6 +2614,10 @@ public class Fsm {
         return event != null && EVENT_CANCEL_SESSION.equals(event.name);
     }
 
+    protected boolean isHibernateEvent(Event event) {
+        return event != null && EVENT_HIBERNATE_SESSION.equals(event.name);
+    }
+
     /**
      * <b>W3C says</b>:<br>
      * <b>function getChildStates(state1)</b><br>
@@ -1729,7 +2634,7 @@ public class Fsm {
         final var gd = datamodel.global();
 
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "invoke",
+            gd.tracer.enter_method(gd.session_id, "invoke",
                     new TraceArgument("state", state),
                     new TraceArgument("inv", inv));
         }
@@ -1742,7 +2647,7 @@ public class Fsm {
         if (type_name_data instanceof Data.Error) {
             // Error -> abort
             if (StaticOptions.trace_method) {
-                this.tracer.exit_method(gd.session_id, "invoke");
+                gd.tracer.exit_method(gd.session_id, "invoke");
             }
             return;
         }
@@ -1756,7 +2661,7 @@ public class Fsm {
                 || (type_name.startsWith(Datamodel.SCXML_INVOKE_TYPE) && type_name.length() <= (Datamodel.SCXML_INVOKE_TYPE.length() + 1)))) {
             Log.error("Unsupported <invoke> type %s", type_name);
             if (StaticOptions.trace_method) {
-                this.tracer.exit_method(gd.session_id, "invoke");
+                gd.tracer.exit_method(gd.session_id, "invoke");
             }
             return;
         }
@@ -1780,7 +2685,7 @@ public class Fsm {
         if (src.type == DataType.Error) {
             // Error -> Abort
             if (StaticOptions.trace_method) {
-                this.tracer.exit_method(gd.session_id, "invoke");
+                gd.tracer.exit_method(gd.session_id, "invoke");
             }
             return;
         }
@@ -1790,7 +2695,7 @@ public class Fsm {
             if (value instanceof Data.Error) {
                 // Error -> Abort
                 if (StaticOptions.trace_method) {
-                    this.tracer.exit_method(gd.session_id, "invoke");
+                    gd.tracer.exit_method(gd.session_id, "invoke");
                 }
                 return;
             }
@@ -1824,28 +2729,32 @@ public class Fsm {
                     fsm = fsmDef.fsm;
                 } else {
                     try {
-                        fsm = new ScxmlReader().parse_from_xml(content.toString());
-                    } catch (IOException i) {
+                        fsm = this.inline_models.get_document(content.toString(), xml -> {
+                            Fsm inline = new ScxmlReader().parse_from_xml(xml);
+                            gd.executor.apply_model_options(inline);
+                            return inline;
+                        });
+                    } catch (Exception i) {
                         Log.exception("Failed to parse scxml source", i);
                         if (StaticOptions.trace_method) {
-                            this.tracer.exit_method(gd.session_id, "invoke");
+                            gd.tracer.exit_method(gd.session_id, "invoke");
                         }
                         return;
                     }
                 }
-                fsm.caller_invoke_id = invokeId;
-                fsm.parent_session_id = gd.session_id;
                 session = fsm.start_fsm_with_data(
                         gd.actions,
                         gd.executor,
                         name_values,
-                        this.tracer.trace_mode()
+                        gd.session_id,
+                        invokeId,
+                        gd.tracer.trace_mode()
                 );
 
             } else {
                 Log.error("No content to execute");
                 if (StaticOptions.trace_method) {
-                    this.tracer.exit_method(gd.session_id, "invoke");
+                    gd.tracer.exit_method(gd.session_id, "invoke");
                 }
                 return;
             }
@@ -1856,7 +2765,7 @@ public class Fsm {
                     src.toString(),
                     gd.actions,
                     name_values,
-                    gd.session_id, invokeId, this.tracer.trace_mode()
+                    gd.session_id, invokeId, gd.tracer.trace_mode()
             );
         }
 
@@ -1865,23 +2774,31 @@ public class Fsm {
 
         gd.child_sessions.put(invokeId, session);
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "invoke");
+            gd.tracer.exit_method(gd.session_id, "invoke");
+        }
+    }
+
+    /**
+     * <b>Actual implementation:</b><br>
+     * Cancels an invoked session via the urgent lane of its external queue, so the cancel doesn't wait behind
+     * queued events. The cancel is platform specific and not a &lt;send>, so a session that has already terminated
+     * doesn't cause "error.communication".
+     */
+    protected void cancelSession(ScxmlSession session) {
+        if (session.is_alive()) {
+            session.cancel();
         }
     }
 
     protected void cancelInvoke(Datamodel datamodel, String invokeId, ScxmlSession session) {
         final var gd = datamodel.global();
         if (StaticOptions.trace_method) {
-            this.tracer.enter_method(gd.session_id, "cancelInvoke");
+            gd.tracer.enter_method(gd.session_id, "cancelInvoke");
         }
         datamodel.global().child_sessions.remove(invokeId);
-        datamodel.send(
-                ScxmlEventIOProcessor.SCXML_EVENT_PROCESSOR_SHORT_TYPE,
-                new Data.String(String.format("%s%s", ScxmlEventIOProcessor.SCXML_TARGET_SESSION_ID_PREFIX, session.session_id.toString())),
-                Event.new_simple(EVENT_CANCEL_SESSION)
-        );
+        this.cancelSession(session);
         if (StaticOptions.trace_method) {
-            this.tracer.exit_method(gd.session_id, "cancelInvoke");
+            gd.tracer.exit_method(gd.session_id, "cancelInvoke");
         }
     }
 
@@ -1902,7 +2819,7 @@ public class Fsm {
             } else {
                 var r = datamodel.execute_condition(t.cond);
                 if (StaticOptions.trace) {
-                    tracer.trace(datamodel.global().session_id, String.format("Checking %s: %s -> %s", t, t.cond, r));
+                    datamodel.global().tracer.trace(datamodel.global().session_id, String.format("Checking %s: %s -> %s", t, t.cond, r));
                 }
                 return r;
             }
@@ -1912,13 +2829,29 @@ public class Fsm {
         }
     }
 
-    public synchronized FsmTimer schedule(int delay_ms, @NotNull Runnable r) {
-        if (timer == null)
-            timer = new Timer();
+    /**
+     * <b>Actual implementation:</b><br>
+     * Variant of {@link #conditionMatch(Datamodel, Transition)} for eventless transitions. These are checked in each
+     * iteration of a macrostep. If the datamodel tracks modifications (see {@link Datamodel#modification_epoch()}),
+     * a false result is memorized and re-used until the epoch changes.
+     * Results of evaluations that modified data or raised errors are not memorized.
+     */
+    protected boolean eventlessConditionMatch(Datamodel datamodel, Transition t) {
+        final int guard_index = t.guard_index;
+        final long epoch = guard_index < 0 ? -1 : datamodel.modification_epoch();
+        if (epoch < 0)
+            return this.conditionMatch(datamodel, t);
 
-        FsmTimer fsmTimer = new FsmTimer(r);
-        timer.schedule(fsmTimer, delay_ms);
-        return fsmTimer;
+        final GlobalData gd = datamodel.global();
+        if (gd.false_guard_epochs.length < this.guard_count)
+            gd.false_guard_epochs = Arrays.copyOf(gd.false_guard_epochs, this.guard_count);
+        if (gd.false_guard_epochs[guard_index] == epoch + 1)
+            return false;
+        final int internalEvents = gd.internalQueue.data.size();
+        final boolean r = this.conditionMatch(datamodel, t);
+        if (!r && datamodel.modification_epoch() == epoch && gd.internalQueue.data.size() == internalEvents)
+            gd.false_guard_epochs[guard_index] = epoch + 1;
+        return r;
     }
 
 }
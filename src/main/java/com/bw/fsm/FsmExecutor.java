@@ -2,6 +2,7 @@ package com.bw.fsm;
 
 import com.bw.fsm.actions.ActionWrapper;
 import com.bw.fsm.datamodel.Datamodel;
+import com.bw.fsm.datamodel.GlobalData;
 import com.bw.fsm.eventIoProcessor.EventIOProcessor;
 import com.bw.fsm.eventIoProcessor.ScxmlEventIOProcessor;
 import com.bw.fsm.serializer.DefaultProtocolReader;
@@ -10,9 +11,21 @@ import com.bw.fsm.tracer.TraceMode;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class FsmExecutor {
 
@@ -36,21 +49,448 @@ public class FsmExecutor {
 
     private IncludePaths include_paths = new IncludePaths();
 
+    /**
+     * Parsed models by URL, see {@link #execute_with_data}.
+     */
+    private final ModelCache model_cache = new ModelCache(ModelCache.DEFAULT_CAPACITY);
+
+    /**
+     * Resources that are shared by the sessions of all bootstraps of the executor, see {@link #get_shared_resource}.
+     */
+    private final ConcurrentHashMap<String, AutoCloseable> shared_resources = new ConcurrentHashMap<>();
+
+
+    /**
+     * Name of the global option to select the {@link ExecutionMode}.
+     */
+    public static final String EXECUTION_MODE_OPTION = "execution_mode";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#pool_parallelism}.
+     */
+    public static final String POOL_PARALLELISM_OPTION = "pool_parallelism";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#pool_batch_size}.
+     */
+    public static final String POOL_BATCH_SIZE_OPTION = "pool_batch_size";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#queue_capacity}.
+     */
+    public static final String QUEUE_CAPACITY_OPTION = "queue_capacity";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#queue_overflow_policy}.
+     */
+    public static final String QUEUE_OVERFLOW_POLICY_OPTION = "queue_overflow_policy";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#queue_block_timeout_ms}.
+     */
+    public static final String QUEUE_BLOCK_TIMEOUT_OPTION = "queue_block_timeout";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#cooperative_children} ("true"/"false").
+     */
+    public static final String COOPERATIVE_CHILDREN_OPTION = "cooperative_children";
+
+    /**
+     * Name of the global option to set the directory of a {@link FileSessionStore} for hibernated sessions.
+     */
+    public static final String HIBERNATE_DIR_OPTION = "hibernate_dir";
+
+    /**
+     * Name of the global option to set the idle time in milliseconds after which sessions are hibernated.
+     */
+    public static final String HIBERNATE_IDLE_OPTION = "hibernate_idle";
+
+    /**
+     * Name of the global option to set the directory of the {@link EventJournal}.
+     */
+    public static final String JOURNAL_DIR_OPTION = "journal_dir";
+
+    /**
+     * Name of the global option to set the group-commit interval of the journal in milliseconds.
+     */
+    public static final String JOURNAL_SYNC_OPTION = "journal_sync";
+
+    /**
+     * Name of the global option to set the number of events between two checkpoints of the journal.
+     */
+    public static final String JOURNAL_CHECKPOINT_OPTION = "journal_checkpoint";
+
+    /**
+     * Name of the global option to set the capacity of the {@link ModelCache}, 0 disables the cache.
+     */
+    public static final String MODEL_CACHE_OPTION = "model_cache";
+
+    /**
+     * Name of the global option to watch the files of cached models ("true"/"false").
+     */
+    public static final String MODEL_CACHE_WATCH_OPTION = "model_cache_watch";
+
+    /**
+     * Name of the global option to set {@link ExecutorState#selection_cache_capacity}.
+     */
+    public static final String SELECTION_CACHE_OPTION = "selection_cache";
 
     public void set_global_options_from_arguments(Map<String, String> named_arguments) {
-        // Currently only Datamodel options are relevant. Ignore all other stuff.
+        // Currently only Datamodel options and the execution options are relevant. Ignore all other stuff.
+        String hibernate_dir = null;
+        int hibernate_idle = 60000;
+        String journal_dir = null;
+        int journal_sync = (int) EventJournal.DEFAULT_SYNC_INTERVAL_MS;
+        int journal_checkpoint = EventJournal.DEFAULT_CHECKPOINT_INTERVAL;
         for (var entry : named_arguments.entrySet()) {
-            if (entry.getKey().startsWith(Datamodel.DATAMODEL_OPTION_PREFIX)) {
+            if (EXECUTION_MODE_OPTION.equals(entry.getKey())) {
+                this.set_execution_mode(ExecutionMode.fromString(entry.getValue()));
+            } else if (POOL_PARALLELISM_OPTION.equals(entry.getKey())) {
+                this.state.pool_parallelism = parse_int_option(entry.getKey(), entry.getValue(), this.state.pool_parallelism);
+            } else if (POOL_BATCH_SIZE_OPTION.equals(entry.getKey())) {
+                this.state.pool_batch_size = parse_int_option(entry.getKey(), entry.getValue(), this.state.pool_batch_size);
+            } else if (QUEUE_CAPACITY_OPTION.equals(entry.getKey())) {
+                this.state.queue_capacity = parse_int_option(entry.getKey(), entry.getValue(), this.state.queue_capacity);
+            } else if (QUEUE_OVERFLOW_POLICY_OPTION.equals(entry.getKey())) {
+                this.state.queue_overflow_policy = OverflowPolicy.fromString(entry.getValue());
+            } else if (QUEUE_BLOCK_TIMEOUT_OPTION.equals(entry.getKey())) {
+                this.state.queue_block_timeout_ms = parse_int_option(entry.getKey(), entry.getValue(), (int) this.state.queue_block_timeout_ms);
+            } else if (COOPERATIVE_CHILDREN_OPTION.equals(entry.getKey())) {
+                this.state.cooperative_children = Boolean.parseBoolean(entry.getValue().trim());
+            } else if (HIBERNATE_DIR_OPTION.equals(entry.getKey())) {
+                hibernate_dir = entry.getValue();
+            } else if (HIBERNATE_IDLE_OPTION.equals(entry.getKey())) {
+                hibernate_idle = parse_int_option(entry.getKey(), entry.getValue(), hibernate_idle);
+            } else if (JOURNAL_DIR_OPTION.equals(entry.getKey())) {
+                journal_dir = entry.getValue();
+            } else if (JOURNAL_SYNC_OPTION.equals(entry.getKey())) {
+                journal_sync = parse_int_option(entry.getKey(), entry.getValue(), journal_sync);
+            } else if (JOURNAL_CHECKPOINT_OPTION.equals(entry.getKey())) {
+                journal_checkpoint = parse_int_option(entry.getKey(), entry.getValue(), journal_checkpoint);
+            } else if (MODEL_CACHE_OPTION.equals(entry.getKey())) {
+                this.model_cache.setCapacity(parse_int_option(entry.getKey(), entry.getValue(), this.model_cache.getCapacity()));
+            } else if (SELECTION_CACHE_OPTION.equals(entry.getKey())) {
+                this.state.selection_cache_capacity = parse_int_option(entry.getKey(), entry.getValue(), this.state.selection_cache_capacity);
+            } else if (MODEL_CACHE_WATCH_OPTION.equals(entry.getKey())) {
+                try {
+                    this.model_cache.watch(Boolean.parseBoolean(entry.getValue()));
+                } catch (IOException e) {
+                    Log.exception("Can't watch model files", e);
+                }
+            } else if (entry.getKey().startsWith(Datamodel.DATAMODEL_OPTION_PREFIX)) {
                 this.state
                         .datamodel_options
                         .put(entry.getKey().substring(Datamodel.DATAMODEL_OPTION_PREFIX.length()),
                                 entry.getValue());
             }
         }
+        if (hibernate_dir != null) {
+            try {
+                this.set_hibernation(new FileSessionStore(Path.of(hibernate_dir)), hibernate_idle);
+            } catch (IOException e) {
+                Log.exception("Can't use hibernate directory " + hibernate_dir, e);
+            }
+        }
+        if (journal_dir != null) {
+            try {
+                this.set_journal(new EventJournal(Path.of(journal_dir), journal_sync, journal_checkpoint));
+                this.owns_journal = true;
+            } catch (IOException e) {
+                Log.exception("Can't use journal directory " + journal_dir, e);
+            }
+        }
+    }
+
+    /**
+     * Sets how new sessions are executed. Running sessions are not affected.
+     */
+    public void set_execution_mode(ExecutionMode mode) {
+        this.state.execution_mode = mode == null ? ExecutionMode.PLATFORM_THREAD : mode;
+    }
+
+    public ExecutionMode get_execution_mode() {
+        return this.state.execution_mode;
+    }
+
+    private static int parse_int_option(String name, String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Log.warn("Illegal value '%s' for option %s", value, name);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Creates the (unstarted) thread for a new session, according to the {@link ExecutionMode}.
+     * Pooled sessions don't use a thread of their own, see {@link #start_pooled_session(PooledSessionTask)}.
+     */
+    public Thread create_session_thread(Runnable runnable, String name) {
+        return switch (this.state.execution_mode) {
+            case VIRTUAL_THREAD -> Thread.ofVirtual().name(name).unstarted(runnable);
+            case PLATFORM_THREAD, POOLED -> new Thread(runnable, name);
+        };
+    }
+
+    private volatile TimerWheel timer;
+
+    /**
+     * Sets the timer for delayed sends and watchdogs of this executor.
+     * The timer is not shut down by {@link #shutdown()}.
+     */
+    public void set_timer(TimerWheel timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Gets the timer of this executor, {@link TimerWheel#shared()} if not set.
+     */
+    public TimerWheel get_timer() {
+        TimerWheel t = timer;
+        return t == null ? TimerWheel.shared() : t;
+    }
+
+    private final ReentrantLock pool_lock = new ReentrantLock();
+    private ExecutorService pool;
+    private boolean owns_pool;
+
+    /**
+     * Sets the pool for {@link ExecutionMode#POOLED}, e.g. a fixed thread pool.
+     * The pool is not shut down by {@link #shutdown()}.<br>
+     * If not set, a {@link ForkJoinPool} with {@link ExecutorState#pool_parallelism} workers is created on demand.
+     */
+    public void set_pool(ExecutorService pool) {
+        pool_lock.lock();
+        try {
+            this.pool = pool;
+            this.owns_pool = false;
+        } finally {
+            pool_lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the pool for {@link ExecutionMode#POOLED}, creates it if needed.
+     */
+    public ExecutorService get_pool() {
+        pool_lock.lock();
+        try {
+            if (pool == null) {
+                int parallelism = state.pool_parallelism > 0 ? state.pool_parallelism : Runtime.getRuntime().availableProcessors();
+                // Async mode: FIFO order for tasks that are never joined.
+                pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                owns_pool = true;
+            }
+            return pool;
+        } finally {
+            pool_lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a session in the pool. Called by {@link Fsm#start_fsm_with_data} for {@link ExecutionMode#POOLED}.
+     */
+    public void start_pooled_session(PooledSessionTask task) {
+        task.start();
+    }
+
+    /**
+     * Gets the scheduler of the parent, if the invoked session shall run cooperatively on the thread of its parent
+     * (see {@link ExecutorState#cooperative_children}).
+     *
+     * @return The scheduler or null if the session needs a thread or task of its own.
+     */
+    CooperativeScheduler get_cooperative_scheduler(ScxmlSession session) {
+        final Integer parent_id = session.global_data.parent_session_id;
+        if (!this.state.cooperative_children || parent_id == null)
+            return null;
+        final ScxmlSession parent = this.state.sessions.get(parent_id);
+        return parent == null ? null : parent.cooperative_scheduler(this);
+    }
+
+    private volatile SessionStore session_store;
+    private final ReentrantLock hibernation_lock = new ReentrantLock();
+    private FsmTimer hibernation_scan;
+    /**
+     * Incremented on each configuration, to stop scans of a previous configuration.
+     */
+    private int hibernation_generation;
+
+    /**
+     * Enables the hibernation of idle sessions. A session that has not taken an external event for the idle time
+     * is passivated: the executor posts {@link Fsm#EVENT_HIBERNATE_SESSION} as urgent event, the session writes
+     * a snapshot to the store and releases its thread (or task) and its global data. The next event for the session
+     * revives it from the snapshot.<br>
+     * The idle sessions are searched on the timer of the executor, with half of the idle time as period.
+     *
+     * @param store   The store for the snapshots, null to disable the hibernation. Hibernated sessions are still
+     *                revived from the previous store.
+     * @param idle_ms The idle time in milliseconds, 0 to disable the automatic hibernation.
+     */
+    public void set_hibernation(SessionStore store, long idle_ms) {
+        hibernation_lock.lock();
+        try {
+            if (store != null)
+                this.session_store = store;
+            ++hibernation_generation;
+            if (hibernation_scan != null) {
+                hibernation_scan.cancel();
+                hibernation_scan = null;
+            }
+            if (store != null && idle_ms > 0)
+                schedule_hibernation_scan(idle_ms, hibernation_generation);
+        } finally {
+            hibernation_lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the store for hibernated sessions or null.
+     */
+    public SessionStore get_session_store() {
+        return session_store;
+    }
+
+    /**
+     * Schedules the next search for idle sessions. Called with hibernation_lock held.
+     */
+    private void schedule_hibernation_scan(long idle_ms, int generation) {
+        hibernation_scan = get_timer().schedule(Math.max(TimerWheel.DEFAULT_TICK_MS, idle_ms / 2), () -> {
+            this.hibernate_idle_sessions(idle_ms);
+            hibernation_lock.lock();
+            try {
+                if (generation == hibernation_generation)
+                    schedule_hibernation_scan(idle_ms, generation);
+            } finally {
+                hibernation_lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Requests the hibernation of all sessions that are idle for the given time and have no queued events.
+     *
+     * @return The number of requested sessions.
+     */
+    public int hibernate_idle_sessions(long idle_ms) {
+        if (session_store == null)
+            return 0;
+        final long now = System.nanoTime();
+        final long idle_ns = TimeUnit.MILLISECONDS.toNanos(idle_ms);
+        int requested = 0;
+        for (var session : this.state.sessions.values()) {
+            if (session.hibernate_requested || session.hibernated.get())
+                continue;
+            final GlobalData gd = session.global_data;
+            if (gd == null || !gd.running || now - gd.last_activity < idle_ns || !session.sender.isEmpty())
+                continue;
+            session.hibernate_requested = true;
+            session.post_urgent(Event.new_simple(Fsm.EVENT_HIBERNATE_SESSION));
+            ++requested;
+        }
+        return requested;
+    }
+
+    /**
+     * Called by the session after it has written its snapshot, see {@link Fsm#hibernate(Datamodel)}.
+     * Registers the revival of the session at its external queue.
+     *
+     * @param wake_up_ms Due time of the first delayed send of the session (System.currentTimeMillis), -1 if none.
+     *                   At this time an empty action is put into the queue, so the session is revived and
+     *                   schedules the delayed sends again.
+     */
+    void session_hibernated(ScxmlSession session, Fsm fsm, long wake_up_ms) {
+        final GlobalData gd = session.global_data;
+        final SessionBootstrap bootstrap = new SessionBootstrap(this, gd.actions, gd.io_processors, gd.tracer, true,
+                gd.shared_functions);
+        final PrintStream os = Log.getPrintStream();
+        session.thread = null;
+        session.global_data = null;
+        // An expired timer only adds an event, so the registration below revives the session also if the timer
+        // expires before.
+        final FsmTimer wake_up = wake_up_ms < 0 ? null :
+                get_timer().schedule(Math.max(0, wake_up_ms - System.currentTimeMillis()),
+                        () -> session.sender.enqueue(Event.new_delayed_action(() -> {
+                        })));
+        final Runnable revive = () -> {
+            if (session.hibernated.compareAndSet(true, false)) {
+                session.sender.on_enqueue = null;
+                // The revived session schedules its delayed sends again, the wake-up would revive it after the
+                // next hibernation.
+                if (wake_up != null)
+                    wake_up.cancel();
+                fsm.resume_session(session, bootstrap, os);
+            }
+        };
+        session.sender.on_enqueue = revive;
+        // The session is marked after the registration, so an event sent by a caller that has seen the mark revives
+        // the session before "send" returns. An event that was added before the mark would not revive the session.
+        session.hibernated.set(true);
+        if (!session.sender.isEmpty())
+            revive.run();
+    }
+
+    private volatile EventJournal journal;
+    private boolean owns_journal;
+
+    /**
+     * Sets the journal for new top-level sessions, null to disable the journal. Running sessions are not affected.
+     * The journal is not closed by {@link #shutdown()}.
+     */
+    public void set_journal(EventJournal journal) {
+        this.journal = journal;
+        this.owns_journal = false;
+    }
+
+    /**
+     * Gets the journal or null.
+     */
+    public EventJournal get_journal() {
+        return journal;
+    }
+
+    /**
+     * Rebuilds all sessions of the model from the journal, e.g. after a restart of the process.
+     * Must be called before new sessions are started, as the recovered sessions keep their ids.
+     * Only sessions of the same model (see {@link Fsm#get_model_id()}) are recovered, models without a name are
+     * not recovered at all. See {@link EventJournal} for the semantics of a recovery.
+     *
+     * @return The recovered sessions.
+     */
+    public java.util.List<ScxmlSession> recover(Fsm model, ActionWrapper actions, TraceMode trace) throws IOException {
+        final EventJournal j = this.journal;
+        java.util.List<ScxmlSession> sessions = new ArrayList<>();
+        if (j == null)
+            return sessions;
+        if (model.name == null || model.name.isEmpty()) {
+            Log.warn("Sessions of a model without name are not recovered");
+            return sessions;
+        }
+        SessionBootstrap bootstrap = null;
+        for (int session_id : j.get_session_ids()) {
+            if (this.state.sessions.containsKey(session_id))
+                continue;
+            EventJournal.Recovery recovery = j.read(session_id);
+            if (recovery == null || !model.get_model_id().equals(recovery.checkpoint.model_id))
+                continue;
+            if (bootstrap == null)
+                bootstrap = model.create_bootstrap(actions, this, trace);
+            sessions.add(model.recover_session(bootstrap, recovery));
+        }
+        return sessions;
     }
 
     public void set_include_paths(IncludePaths include_path) {
         this.include_paths.add(include_path);
+        // Includes may resolve differently now.
+        this.model_cache.clear();
+    }
+
+    /**
+     * Gets the cache of parsed models.
+     */
+    public ModelCache get_model_cache() {
+        return model_cache;
     }
 
     /**
@@ -64,6 +504,44 @@ public class FsmExecutor {
                 pp.shutdown();
             }
         }
+        if (journal != null && owns_journal) {
+            journal.close();
+        }
+        try {
+            model_cache.watch(false);
+        } catch (IOException e) {
+            Log.exception("Failed to stop model watch", e);
+        }
+        pool_lock.lock();
+        try {
+            if (pool != null && owns_pool) {
+                pool.shutdown();
+            }
+            pool = null;
+        } finally {
+            pool_lock.unlock();
+        }
+        for (var key : shared_resources.keySet()) {
+            AutoCloseable resource = shared_resources.remove(key);
+            if (resource != null) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    Log.exception("Failed to close shared resource " + key, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a resource that is shared by all sessions of the executor, e.g. the script engine of a datamodel.
+     * The resource is created on first use and closed by {@link #shutdown()}.
+     *
+     * @param key     The key of the resource, by convention prefixed with the name of the datamodel.
+     * @param factory Creates the resource.
+     */
+    public <T extends AutoCloseable> T get_shared_resource(String key, Class<T> type, Supplier<T> factory) {
+        return type.cast(shared_resources.computeIfAbsent(key, k -> factory.get()));
     }
 
     /**
@@ -98,41 +576,61 @@ public class FsmExecutor {
             String invoke_id,
             TraceMode trace
     ) {
-        String extension = IOTool.getFileExtension(url);
-
-        Fsm fsm = null;
-
-        // Use reader to parse the scxml file:
+        Fsm fsm;
         try {
-            if ("scxml".equalsIgnoreCase(extension) || "xml".equalsIgnoreCase(extension)) {
-                if (StaticOptions.debug)
-                    Log.debug("Loading FSM from XML %s", url);
-                ScxmlReader sr = new ScxmlReader().withIncludePaths(this.include_paths);
-                fsm = sr.parse_from_url(new URL(url));
-            } else if ("rfsm".equalsIgnoreCase(extension)) {
-                if (StaticOptions.debug)
-                    Log.debug("Loading FSM from binary %s", url);
-                try (InputStream is = new URL(url).openStream()) {
-                    FsmReader reader = new FsmReader(new DefaultProtocolReader(is));
-                    fsm = reader.read();
-                }
-            }
+            fsm = model_cache.enabled() ? model_cache.get(url, this::load_model) : load_model(url);
         } catch (Exception e) {
             Log.error("Failed to parse %s", url);
             throw new RuntimeException(e);
         }
 
-
         if (fsm != null) {
-            fsm.file = url;
-            fsm.caller_invoke_id = invoke_id;
-            fsm.parent_session_id = parent;
-            return fsm.start_fsm_with_data(actions, this, data, trace);
+            return fsm.start_fsm_with_data(actions, this, data, parent, invoke_id, trace);
         } else {
             return null;
         }
     }
 
+    /**
+     * Parses the FSM from the URL, the format is selected by the file extension.
+     *
+     * @return The model or null if the format is not supported.
+     */
+    protected Fsm load_model(String url) throws Exception {
+        String extension = IOTool.getFileExtension(url);
+
+        Fsm fsm = null;
+
+        // Use reader to parse the scxml file:
+        if ("scxml".equalsIgnoreCase(extension) || "xml".equalsIgnoreCase(extension)) {
+            if (StaticOptions.debug)
+                Log.debug("Loading FSM from XML %s", url);
+            ScxmlReader sr = new ScxmlReader().withIncludePaths(this.include_paths);
+            fsm = sr.parse_from_url(new URL(url));
+        } else if ("rfsm".equalsIgnoreCase(extension)) {
+            if (StaticOptions.debug)
+                Log.debug("Loading FSM from binary %s", url);
+            try (InputStream is = new URL(url).openStream()) {
+                FsmReader reader = new FsmReader(new DefaultProtocolReader(is));
+                fsm = reader.read();
+            }
+        }
+        if (fsm != null) {
+            fsm.file = url;
+            this.apply_model_options(fsm);
+        }
+        return fsm;
+    }
+
+    /**
+     * Applies the options of the executor to a model that the executor has loaded. Called once, before any session
+     * uses the model. Models that are parsed by the caller keep their own settings.
+     */
+    protected void apply_model_options(Fsm fsm) {
+        if (this.state.selection_cache_capacity >= 0)
+            fsm.selection_cache.setCapacity(this.state.selection_cache_capacity);
+    }
+
     /// Loads and starts the specified FSM with some data set.\
     /// Normally used if a child-FSM is started from a parent FSM, in this case via inline content.
     public ScxmlSession execute_with_data_from_xml(
@@ -149,34 +647,135 @@ public class FsmExecutor {
         // Use reader to parse the XML:
         ScxmlReader reader = new ScxmlReader().withIncludePaths(this.include_paths);
         Fsm fsm = reader.parse_from_xml(xml);
-        fsm.caller_invoke_id = invoke_id;
-        fsm.parent_session_id = parent;
+        this.apply_model_options(fsm);
         var session = fsm.start_fsm_with_data(
                 actions,
                 this,
                 data,
+                parent,
+                invoke_id,
                 trace
         );
         return session;
     }
 
     /**
-     * Called by FSM after session ends and FinishMode.DISPOSE.
+     * Creates a new map of the IO-Processors by type, as needed for {@link com.bw.fsm.datamodel.GlobalData#io_processors}.
+     */
+    public Map<String, EventIOProcessor> create_io_processor_map() {
+        Map<String, EventIOProcessor> io_processors = new HashMap<>();
+        for (var p : this.state.processors) {
+            for (var t : p.get_types()) {
+                io_processors.put(t, p);
+            }
+        }
+        return io_processors;
+    }
+
+    /**
+     * Starts a number of sessions of an already parsed model, see {@link #spawn(Fsm, Stream, ActionWrapper, TraceMode)}.
+     */
+    public CompletableFuture<java.util.List<ScxmlSession>> spawn(Fsm model, int count, ActionWrapper actions, TraceMode trace) {
+        return this.spawn(model, Stream.generate(Collections::<ParamPair>emptyList).limit(Math.max(0, count)), actions, trace);
+    }
+
+    /**
+     * Starts one session of an already parsed model for each element of the stream.<br>
+     * All sessions share the model and one bootstrap (see {@link SessionBootstrap}): the actions, including the
+     * functions of the datamodel, are created once and shared as frozen copy. The sessions are started in the
+     * current execution mode by a separate thread, that takes over the current log stream.
+     *
+     * @param data    The initial data of each session, matched against the top-level data of the model.
+     * @param actions The actions, a frozen copy is used by the sessions.
+     * @return The future with all started sessions (in the order of the data stream).
+     */
+    public CompletableFuture<java.util.List<ScxmlSession>> spawn(Fsm model, Stream<java.util.List<ParamPair>> data,
+                                                               ActionWrapper actions, TraceMode trace) {
+        final CompletableFuture<java.util.List<ScxmlSession>> result = new CompletableFuture<>();
+        final PrintStream os = Log.getPrintStream();
+        Thread.ofVirtual().name("spawn_" + model.name).start(() -> {
+            try {
+                Log.setLogStream(os);
+                SessionBootstrap bootstrap = model.create_bootstrap(actions, this, trace);
+                java.util.List<ScxmlSession> sessions = new ArrayList<>();
+                data.forEachOrdered(d -> sessions.add(model.start_session(bootstrap, d)));
+                Log.info("Spawned %d sessions of '%s'", sessions.size(), model.name);
+                result.complete(sessions);
+            } catch (Throwable t) {
+                Log.exception("Spawn failed", t);
+                result.completeExceptionally(t);
+            } finally {
+                Log.releaseStream();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Called by FSM after the session has terminated. Removes the session from the registry and
+     * the IO-Processors.
      */
     public void remove_session(Integer session_id) {
         this.state.sessions.remove(session_id);
+        for (var processor : this.state.processors) {
+            processor.remove_fsm(session_id);
+        }
+    }
+
+    /**
+     * Called by the thread or task of a session after "interpret" has returned.
+     * Removes the session and completes the termination of the session.
+     */
+    void session_terminated(ScxmlSession session) {
+        final CooperativeScheduler scheduler = session.cooperative.get();
+        if (scheduler != null)
+            scheduler.close();
+        this.remove_session(session.session_id);
+        session.set_terminated();
+    }
+
+    /**
+     * Sends some event to a session. If the external queue of the session is bounded, the {@link OverflowPolicy}
+     * of the queue is applied.
+     *
+     * @return false if the session doesn't exist (or has already terminated) or the event was rejected.
+     */
+    public boolean send_to_session(Integer session_id, Event event) {
+        return send_to_session(session_id, event, true);
     }
 
     /**
      * Sends some event to a session.
+     *
+     * @param bounded If false, the capacity of the queue is ignored. Used for events that must not get lost.
+     * @return false if the session doesn't exist (or has already terminated) or the event was rejected.
      */
-    public void send_to_session(Integer session_id, Event event) {
+    public boolean send_to_session(Integer session_id, Event event, boolean bounded) {
         ScxmlSession session = this.state.sessions.get(session_id);
         if (session == null) {
-            Log.panic("TODO: Handling of unknown session");
-        } else {
+            if (StaticOptions.debug)
+                Log.debug("Session #%s is not available", session_id);
+            return false;
+        }
+        if (!bounded) {
             session.sender.enqueue(event);
+        } else if (!session.sender.offer(event)) {
+            if (StaticOptions.debug)
+                Log.debug("Queue of session #%s is full, event %s rejected", session_id, event.name);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the current depth of the external queues of all sessions. Key: session id.
+     */
+    public Map<Integer, Integer> get_queue_depths() {
+        Map<Integer, Integer> depths = new HashMap<>();
+        for (var session : this.state.sessions.values()) {
+            depths.put(session.session_id, session.sender.size());
         }
+        return depths;
     }
 
 }
@@ -1,17 +1,71 @@
 package com.bw.fsm;
 
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-public class FsmTimer extends TimerTask {
+/**
+ * A timeout scheduled by {@link TimerWheel#schedule(long, Runnable)}.
+ */
+public class FsmTimer {
+
+    static final int PENDING = 0;
+    static final int CANCELLED = 1;
+    static final int EXPIRED = 2;
+
+    private static final AtomicIntegerFieldUpdater<FsmTimer> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(FsmTimer.class, "state");
 
     private final Runnable runnable;
+    private final TimerWheel wheel;
+    private volatile int state = PENDING;
+
+    /**
+     * Deadline in nanoseconds, relative to the start of the wheel.
+     */
+    final long deadline;
 
-    public FsmTimer(Runnable r) {
+    // Fields of the wheel, only accessed by its worker thread.
+    long rounds;
+    int bucket = -1;
+    FsmTimer prev;
+    FsmTimer next;
+
+    FsmTimer(TimerWheel wheel, long deadline, Runnable r) {
+        this.wheel = wheel;
+        this.deadline = deadline;
         this.runnable = r;
     }
 
-    @Override
-    public void run() {
+    /**
+     * Cancels the timer, O(1).
+     *
+     * @return false if the timer has already expired or was cancelled before.
+     */
+    public boolean cancel() {
+        if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+            wheel.cancelled(this);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean is_cancelled() {
+        return state == CANCELLED;
+    }
+
+    public boolean is_expired() {
+        return state == EXPIRED;
+    }
+
+    /**
+     * Marks the timer as expired, if it was not cancelled. The task is executed by {@link #run_task()}.
+     *
+     * @return true if the task shall be executed.
+     */
+    boolean expire() {
+        return STATE.compareAndSet(this, PENDING, EXPIRED);
+    }
+
+    void run_task() {
         runnable.run();
     }
 }
@@ -8,6 +8,7 @@ import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread aware logger.
@@ -21,7 +22,7 @@ public class Log {
      */
     public final static class LogPrintStream extends PrintStream {
 
-        private int count = 0;
+        private final AtomicInteger count = new AtomicInteger();
 
         public final Path file;
 
@@ -33,18 +34,30 @@ public class Log {
             file = logFile;
         }
 
-        public synchronized void lock() {
-            ++count;
+        public void lock() {
+            count.incrementAndGet();
         }
 
-        public synchronized void unlock() {
-            --count;
-            if (count <= 0) {
+        public void unlock() {
+            if (count.decrementAndGet() <= 0) {
                 close();
             }
-
         }
 
+        /**
+         * Writes a log line directly to the buffered stream.<br>
+         * The line is written under the monitor of the stream, the lock of all print methods of PrintStream, so log
+         * lines and direct prints (e.g. "printStackTrace") are never mixed. A virtual thread holds the monitor only
+         * for the write to the buffer. A separate ReentrantLock would be taken by callers inside the monitor (also
+         * by the loggers of the script engine) and can block all carriers, if the virtual thread that gets the lock
+         * next finds no free carrier.
+         */
+        public void write_line(String line) throws IOException {
+            final byte[] bytes = line.getBytes(charset());
+            synchronized (this) {
+                out.write(bytes);
+            }
+        }
     }
 
     /**
@@ -104,7 +117,10 @@ public class Log {
                 ps.print(output);
             if (writer != null) {
                 try {
-                    writer.print(output);
+                    if (writer instanceof LogPrintStream lp)
+                        lp.write_line(output);
+                    else
+                        writer.print(output);
                 } catch (Exception e) {
                     System.err.printf("Failed to write to log: %s\n", e.getMessage());
                     releaseStream();
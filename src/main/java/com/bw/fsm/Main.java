@@ -7,11 +7,11 @@ import com.bw.fsm.datamodel.null_datamodel.NullDatamodel;
 import com.bw.fsm.tracer.Tracer;
 import com.bw.fsm.tracer.thrift.ThriftTracerFactory;
 
-import javax.swing.*;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Locale;
 
@@ -31,7 +31,7 @@ public class Main {
 
     }
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         Arguments arguments;
         try {
@@ -91,7 +91,14 @@ public class Main {
 
             FsmExecutor executor = new FsmExecutor(true);
             executor.set_include_paths(ic);
+            if (config.globalOptions != null) {
+                executor.set_global_options_from_arguments(config.globalOptions);
+            }
+            if (config.executionMode != null) {
+                executor.set_execution_mode(config.executionMode);
+            }
 
+            java.util.List<ScxmlSession> sessions = new ArrayList<>();
             for (RunConfiguration.Machine m : config.machines) {
                 Path p = Paths.get(m.path);
                 if (!p.isAbsolute()) {
@@ -103,21 +110,29 @@ public class Main {
                         new ActionWrapper(),
                         executor, Collections.emptyList(), m.options.trace.mode
                 );
+                sessions.add(session);
 
-                Timer watchdog = null;
                 if (m.timeoutMS > 0) {
-                    watchdog = new Timer(m.timeoutMS, e -> {
-                        if (session.thread.isAlive()) {
-                            session.sender.enqueue(Event.new_simple(Fsm.EVENT_CANCEL_SESSION));
+                    executor.get_timer().schedule(m.timeoutMS, () -> {
+                        if (session.is_alive()) {
+                            session.cancel();
                         }
                     });
-                    watchdog.setRepeats(false);
-                    watchdog.start();
                 }
             }
 
             for (String fsm : arguments.final_args) {
-                executor.execute(fsm, null, arguments.getTraceMode());
+                ScxmlSession session = executor.execute(fsm, null, arguments.getTraceMode());
+                if (session != null)
+                    sessions.add(session);
+            }
+
+            if (executor.get_execution_mode() == ExecutionMode.POOLED) {
+                // The workers of the pool don't keep the VM alive.
+                for (ScxmlSession session : sessions) {
+                    session.join();
+                }
+                executor.shutdown();
             }
         } else {
             usage(System.out);
@@ -0,0 +1,396 @@
+package com.bw.fsm;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded LRU cache of parsed models, owned by a {@link FsmExecutor}. Used for each
+ * {@link FsmExecutor#execute_with_data} call, so e.g. an &lt;invoke src="..."> that is executed repeatedly
+ * parses the document only once. Each model also has a cache for its inline &lt;invoke> documents
+ * (see {@link #get_document(String, Loader)}).<br>
+ * The key is the normalized URL. A model of a local file is validated on each lookup by the modification time and the
+ * size of the file. Optionally, a watch service invalidates changed files (see {@link #watch(boolean)}), then the
+ * check on lookup can be switched off (see {@link #setCheckModified(boolean)}).<br>
+ * Cached models are shared by all their sessions, this is safe as sessions never modify the model.
+ */
+public class ModelCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Parses a model.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @param source The URL or the inline document.
+         * @return The model or null if the source can't be handled.
+         */
+        Fsm load(String source) throws Exception;
+    }
+
+    private static final class CachedModel {
+        final Fsm fsm;
+        final Path path;
+        final long modified;
+        final long size;
+
+        CachedModel(Fsm fsm, Path path, long modified, long size) {
+            this.fsm = fsm;
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Lock instead of "synchronized", as the cache is used by (possibly virtual) session threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int capacity;
+    private boolean check_modified = true;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private final LinkedHashMap<String, CachedModel> models = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedModel> eldest) {
+            if (size() > capacity) {
+                ++evictions;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private WatchService watch_service;
+    private Thread watcher;
+    private final Set<Path> watched_directories = new HashSet<>();
+
+    public ModelCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * True if the cache is enabled (capacity > 0).
+     */
+    public boolean enabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Normalizes an URL for the use as key.
+     */
+    public static String key(String url) {
+        try {
+            return new URI(url).normalize().toString();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+
+    /**
+     * Gets the model from the cache or loads it with the loader. Counts the hit or miss.<br>
+     * The loader is called without lock, concurrent lookups of a missing model may load it more than once.
+     */
+    public Fsm get(String url, Loader loader) throws Exception {
+        final String key = key(url);
+        return lookup(key, local_path(key), url, loader);
+    }
+
+    /**
+     * Gets the model of an inline document (e.g. the content of an &lt;invoke>) from the cache or loads it with the
+     * loader. The document itself is the key.
+     */
+    public Fsm get_document(String xml, Loader loader) throws Exception {
+        return lookup(xml, null, xml, loader);
+    }
+
+    private Fsm lookup(String key, Path path, String source, Loader loader) throws Exception {
+        BasicFileAttributes attributes = null;
+
+        lock.lock();
+        try {
+            CachedModel entry = models.get(key);
+            if (entry != null && check_modified && path != null) {
+                attributes = attributes(path);
+                if (attributes == null || attributes.lastModifiedTime().toMillis() != entry.modified
+                        || attributes.size() != entry.size) {
+                    models.remove(key);
+                    ++invalidations;
+                    entry = null;
+                }
+            }
+            if (entry != null) {
+                ++hits;
+                return entry.fsm;
+            }
+            ++misses;
+        } finally {
+            lock.unlock();
+        }
+
+        if (path != null && attributes == null)
+            attributes = attributes(path);
+        Fsm fsm = loader.load(source);
+        if (fsm != null) {
+            fsm.prepare_once();
+            lock.lock();
+            try {
+                if (capacity > 0) {
+                    models.put(key, new CachedModel(fsm, path,
+                            attributes == null ? 0 : attributes.lastModifiedTime().toMillis(),
+                            attributes == null ? 0 : attributes.size()));
+                    if (path != null && watch_service != null)
+                        register(path);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return fsm;
+    }
+
+    private static Path local_path(String key) {
+        if (key.startsWith("file:")) {
+            try {
+                return Path.of(new URI(key));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static BasicFileAttributes attributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Removes the model of the URL.
+     */
+    public void invalidate(String url) {
+        lock.lock();
+        try {
+            if (models.remove(key(url)) != null)
+                ++invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all models of a local file. Called by the watcher.
+     */
+    private void invalidate(Path path) {
+        lock.lock();
+        try {
+            if (models.values().removeIf(e -> path.equals(e.path)))
+                ++invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the maximal number of models. 0 disables the cache.
+     */
+    public void setCapacity(int capacity) {
+        lock.lock();
+        try {
+            this.capacity = Math.max(0, capacity);
+            if (models.size() > this.capacity) {
+                models.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * If true (default), models of local files are validated by the modification time and the size of the file
+     * on each lookup.
+     */
+    public void setCheckModified(boolean check_modified) {
+        lock.lock();
+        try {
+            this.check_modified = check_modified;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts or stops a thread that watches the directories of cached local files and invalidates changed files.
+     */
+    public void watch(boolean watch) throws IOException {
+        lock.lock();
+        try {
+            if (watch && watch_service == null) {
+                watch_service = FileSystems.getDefault().newWatchService();
+                for (CachedModel entry : models.values()) {
+                    if (entry.path != null)
+                        register(entry.path);
+                }
+                final WatchService service = watch_service;
+                watcher = Thread.ofPlatform().daemon().name("fsm_model_watch").start(() -> run_watcher(service));
+            } else if (!watch && watch_service != null) {
+                watch_service.close();
+                watch_service = null;
+                watcher = null;
+                watched_directories.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers the directory of the file at the watch service. Called with lock held.
+     */
+    private void register(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null && watched_directories.add(directory)) {
+            try {
+                directory.register(watch_service, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_CREATE);
+            } catch (IOException e) {
+                Log.warn("Can't watch %s: %s", directory, e.getMessage());
+            }
+        }
+    }
+
+    private void run_watcher(WatchService service) {
+        try {
+            while (true) {
+                WatchKey watch_key = service.take();
+                Path directory = (Path) watch_key.watchable();
+                for (WatchEvent<?> event : watch_key.pollEvents()) {
+                    if (event.context() instanceof Path file) {
+                        invalidate(directory.resolve(file).toAbsolutePath());
+                    }
+                }
+                watch_key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return models.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of models removed because the cache was full.
+     */
+    public long getEvictions() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of models removed because the file has changed or by {@link #invalidate(String)}.
+     */
+    public long getInvalidations() {
+        lock.lock();
+        try {
+            return invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ratio of hits to all lookups, 0 if there was no lookup.
+     */
+    public double getHitRate() {
+        lock.lock();
+        try {
+            final long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            models.clear();
+            hits = 0;
+            misses = 0;
+            evictions = 0;
+            invalidations = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("models %d/%d, hits %d, misses %d, evictions %d, invalidations %d",
+                    models.size(), capacity, hits, misses, evictions, invalidations);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
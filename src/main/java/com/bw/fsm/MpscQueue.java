@@ -0,0 +1,179 @@
+package com.bw.fsm;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Unbounded lock-free queue for multiple producers and a single consumer, used as the external event queue
+ * of a session (see {@link BlockingQueue}).<br>
+ * Producers append a node with one atomic exchange of the tail, they never wait for each other or for the consumer.
+ * The consumer is the only thread that removes elements. If the queue is empty, {@link #take()} spins a short time
+ * and then parks the consumer. Producers unpark a parked consumer.<br>
+ * All methods except {@link #poll()} and {@link #take()} can be called by any thread.
+ */
+public final class MpscQueue<T> {
+
+    static final class Node<T> {
+        T value;
+        final boolean marked;
+        volatile Node<T> next;
+
+        Node(T value, boolean marked) {
+            this.value = value;
+            this.marked = marked;
+        }
+    }
+
+    /**
+     * Number of polls before the consumer parks. No spinning on single-processor machines.
+     */
+    static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Node> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Node.class, "tail");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Thread> WAITER =
+            AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Thread.class, "waiter");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<MpscQueue> COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(MpscQueue.class, "count");
+
+    /**
+     * The last node, updated by the producers.
+     */
+    private volatile Node<T> tail;
+
+    /**
+     * The stub node before the first element, only accessed by the consumer.
+     */
+    private Node<T> head;
+
+    /**
+     * Mark of the element returned by the last poll, only accessed by the consumer.
+     */
+    private boolean last_marked;
+
+    private volatile int count;
+
+    /**
+     * The parked consumer, if any.
+     */
+    private volatile Thread waiter;
+
+    public MpscQueue() {
+        head = tail = new Node<>(null, false);
+    }
+
+    /**
+     * Appends the element, never blocks.
+     */
+    public void offer(T e) {
+        offer(e, false);
+    }
+
+    /**
+     * Appends the element with a mark, never blocks. The consumer gets the mark via {@link #last_marked()},
+     * e.g. to handle elements of different producers in one FIFO order.
+     */
+    @SuppressWarnings("unchecked")
+    public void offer(T e, boolean marked) {
+        final Node<T> node = new Node<>(e, marked);
+        COUNT.incrementAndGet(this);
+        final Node<T> prev = TAIL.getAndSet(this, node);
+        prev.next = node;
+        // Only one producer wakes up the consumer.
+        final Thread w = waiter;
+        if (w != null && WAITER.compareAndSet(this, w, null))
+            LockSupport.unpark(w);
+    }
+
+    /**
+     * Removes and returns the first element, returns null if the queue is empty. Only for the consumer.
+     */
+    public @Nullable T poll() {
+        final Node<T> next = head.next;
+        if (next == null)
+            return null;
+        head = next;
+        final T e = next.value;
+        next.value = null;
+        last_marked = next.marked;
+        COUNT.decrementAndGet(this);
+        return e;
+    }
+
+    /**
+     * The mark of the element that was returned by the last successful {@link #poll()} or {@link #take()}.
+     * Only for the consumer.
+     */
+    public boolean last_marked() {
+        return last_marked;
+    }
+
+    /**
+     * Removes and returns the first element, waits if the queue is empty. Only for the consumer.
+     *
+     * @throws InterruptedException If the consumer was interrupted while waiting. The interrupt status is cleared.
+     */
+    public T take() throws InterruptedException {
+        T e;
+        while ((e = poll()) == null) {
+            await(null);
+        }
+        return e;
+    }
+
+    /**
+     * Waits until this queue or the other queue has an element. Only for the consumer of both queues.
+     *
+     * @param other Another queue of the same consumer, e.g. a lane with higher priority, can be null.
+     * @throws InterruptedException If the consumer was interrupted while waiting. The interrupt status is cleared.
+     */
+    public void await(@Nullable MpscQueue<?> other) throws InterruptedException {
+        for (int i = 0; i < SPINS; ++i) {
+            if (has_next(other))
+                return;
+            Thread.onSpinWait();
+        }
+        final Thread current = Thread.currentThread();
+        try {
+            // A producer links its node before it reads "waiter", so no wake-up gets lost.
+            while (true) {
+                waiter = current;
+                if (other != null)
+                    other.waiter = current;
+                if (has_next(other))
+                    return;
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                LockSupport.park(this);
+            }
+        } finally {
+            waiter = null;
+            if (other != null)
+                other.waiter = null;
+        }
+    }
+
+    private boolean has_next(@Nullable MpscQueue<?> other) {
+        return head.next != null || (other != null && other.head.next != null);
+    }
+
+    /**
+     * Number of elements. Producers count an element before it is linked, so the value may be too high for a
+     * short moment.
+     */
+    public int size() {
+        return Math.max(0, count);
+    }
+
+    public boolean isEmpty() {
+        return count <= 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.bw.fsm;
+
+import java.util.Locale;
+
+/**
+ * Defines what happens if an event is offered to a bounded external queue that is full,
+ * see {@link BlockingQueue#offer(Object)}.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The sender waits until the queue has space, at most {@link BlockingQueue#get_block_timeout()} milliseconds.
+     * If the queue is still full, the event is rejected like with {@link #FAIL}.
+     */
+    BLOCK,
+    /**
+     * Default. The event is rejected. For &lt;send> the sending session gets "error.communication".
+     */
+    FAIL,
+    /**
+     * The oldest events in the queue are removed to get space for the new event.
+     */
+    DROP_OLDEST,
+    /**
+     * The new event is silently discarded.
+     */
+    DROP_NEWEST;
+
+    /**
+     * Case invariant converter. Returns {@link #FAIL} for null or unknown values.
+     */
+    public static OverflowPolicy fromString(String policy) {
+        if (policy == null)
+            return FAIL;
+        return switch (policy.toLowerCase(Locale.CANADA)) {
+            case "block" -> BLOCK;
+            case "fail" -> FAIL;
+            case "drop_oldest" -> DROP_OLDEST;
+            case "drop_newest" -> DROP_NEWEST;
+            default -> {
+                Log.warn("Unknown overflow policy %s", policy);
+                yield FAIL;
+            }
+        };
+    }
+}
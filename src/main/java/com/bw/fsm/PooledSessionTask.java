@@ -0,0 +1,147 @@
+package com.bw.fsm;
+
+import com.bw.fsm.datamodel.Datamodel;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Executes a session as a sequence of run-to-completion tasks, see {@link ExecutionMode#POOLED}.<br>
+ * The task is submitted to the pool if an event is added to the external queue of an idle session.
+ * Each run processes a bounded number of events via {@link Fsm#step(Datamodel, int)}, so a session is never
+ * executed by two workers at once and an idle session holds no thread.<br>
+ * With a {@link CooperativeScheduler} as pool, the runs are executed by the thread of the parent session.
+ */
+public final class PooledSessionTask implements Runnable {
+
+    private final Fsm fsm;
+    private final ScxmlSession session;
+    private final FsmExecutor executor;
+    private final Executor pool;
+    private final int batch_size;
+    private final PrintStream log_stream;
+    private final Supplier<Datamodel> datamodel_factory;
+    private final Predicate<Datamodel> initializer;
+    private Datamodel datamodel;
+
+    /**
+     * True while the task is submitted or running. Also stays true after the session has terminated.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param log_stream        The log stream, that is set for each run and held until the session has terminated.
+     * @param datamodel_factory Creates the datamodel in the first run.
+     */
+    public PooledSessionTask(Fsm fsm, ScxmlSession session, FsmExecutor executor, PrintStream log_stream,
+                             Supplier<Datamodel> datamodel_factory) {
+        this(fsm, session, executor, log_stream, datamodel_factory, fsm::initializeInterpreter);
+    }
+
+    /**
+     * @param log_stream        The log stream, that is set for each run.
+     * @param datamodel_factory Creates the datamodel in the first run.
+     * @param initializer       Initializes the datamodel in the first run, e.g. to resume a hibernated session.
+     *                          Returns false if the session can't be started.
+     */
+    public PooledSessionTask(Fsm fsm, ScxmlSession session, FsmExecutor executor, PrintStream log_stream,
+                             Supplier<Datamodel> datamodel_factory, Predicate<Datamodel> initializer) {
+        this(fsm, session, executor, log_stream, datamodel_factory, initializer, executor.get_pool());
+    }
+
+    /**
+     * @param log_stream        The log stream, that is set for each run.
+     * @param datamodel_factory Creates the datamodel in the first run.
+     * @param initializer       Initializes the datamodel in the first run.
+     * @param pool              Executes the runs, e.g. a {@link CooperativeScheduler}.
+     */
+    public PooledSessionTask(Fsm fsm, ScxmlSession session, FsmExecutor executor, PrintStream log_stream,
+                             Supplier<Datamodel> datamodel_factory, Predicate<Datamodel> initializer,
+                             Executor pool) {
+        this.fsm = fsm;
+        this.session = session;
+        this.executor = executor;
+        this.pool = pool;
+        this.batch_size = Math.max(1, executor.state.pool_batch_size);
+        this.log_stream = log_stream;
+        this.datamodel_factory = datamodel_factory;
+        this.initializer = initializer;
+        // The stream is used by the runs of the session, so it is held until the session has terminated or
+        // hibernated, as by the thread of a session in the other modes.
+        if (log_stream instanceof Log.LogPrintStream lp)
+            lp.lock();
+    }
+
+    /**
+     * Registers the task at the external queue of the session and submits the first run, that initializes
+     * the session.
+     */
+    void start() {
+        session.sender.on_enqueue = this::schedule;
+        schedule();
+    }
+
+    /**
+     * Submits the task if not already submitted.
+     */
+    void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        Fsm.StepResult result = Fsm.StepResult.TERMINATED;
+        // A cooperative run on the thread of the parent keeps the stream of the parent.
+        final boolean set_stream = Log.getPrintStream() != log_stream;
+        try {
+            if (set_stream)
+                Log.setLogStream(log_stream);
+            if (datamodel == null) {
+                if (StaticOptions.debug)
+                    Log.debug("SM Session %s starting...", session.session_id);
+                datamodel = datamodel_factory.get();
+                if (initializer.test(datamodel))
+                    result = fsm.step(datamodel, batch_size);
+            } else {
+                result = fsm.step(datamodel, batch_size);
+            }
+            if (result == Fsm.StepResult.TERMINATED && StaticOptions.debug)
+                Log.debug("SM finished");
+        } catch (Exception e) {
+            Log.exception("SM terminated with exception.", e);
+            result = Fsm.StepResult.TERMINATED;
+        } finally {
+            if (set_stream)
+                Log.releaseStream();
+        }
+
+        switch (result) {
+            case TERMINATED -> {
+                session.sender.on_enqueue = null;
+                executor.session_terminated(session);
+                release_log_stream();
+            }
+            case YIELDED -> pool.execute(this);
+            case HIBERNATED -> {
+                // The session was passivated, the executor creates a new task to revive it.
+                release_log_stream();
+            }
+            case IDLE -> {
+                scheduled.set(false);
+                // An event that was added after the last poll may have missed the schedule.
+                if (!session.sender.isEmpty())
+                    schedule();
+            }
+        }
+    }
+
+    private void release_log_stream() {
+        if (log_stream instanceof Log.LogPrintStream lp)
+            lp.unlock();
+    }
+}
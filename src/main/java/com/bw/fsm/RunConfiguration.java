@@ -59,6 +59,12 @@ public class RunConfiguration {
     @JsonProperty("global_options")
     public Map<String, String> globalOptions;
 
+    /**
+     * How the sessions are executed. If not set, {@link ExecutionMode#PLATFORM_THREAD} is used.
+     */
+    @JsonProperty("execution_mode")
+    public ExecutionMode executionMode;
+
     public static class ThriftOptions {
 
         /**
@@ -0,0 +1,118 @@
+package com.bw.fsm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Per-session buffers that are re-used by the algorithm in {@link Fsm} instead of creating
+ * temporary sets and lists for each event.<br>
+ * All buffers are owned by the session thread. Results that are based on these buffers are only valid
+ * until the next call of the same method.
+ */
+public final class ScratchBuffers {
+
+    /**
+     * Maximal number of event names for which the token-prefixes are kept.
+     */
+    static final int MAX_TOKEN_PREFIXES = 256;
+
+    /**
+     * Result of selectTransitions and selectEventlessTransitions, before conflicts are removed.
+     */
+    public final OrderedSet<Transition> enabledTransitions = new OrderedSet<>();
+
+    /**
+     * Result of removeConflictingTransitions.
+     */
+    public final OrderedSet<Transition> filteredTransitions = new OrderedSet<>();
+
+    public final OrderedSet<Transition> transitionsToRemove = new OrderedSet<>();
+
+    /**
+     * The list of transitions for microstep.
+     */
+    public final List<Transition> transitionList = new List<>();
+
+    /**
+     * Union of the exit sets of {@link #filteredTransitions}.
+     */
+    public final StateSet exitSetUnion = new StateSet();
+
+    /**
+     * Exit sets of single transitions for the conflict checks, see {@link #exitSet(int)}.
+     */
+    private StateSet[] exitSets = new StateSet[0];
+
+    /**
+     * Always empty, used as "defaultHistoryContent" if no history is involved.
+     */
+    public final HashTable<State, ExecutableContentBlock> emptyHistoryContent = new HashTable<>();
+
+    /**
+     * Finalize content and auto-forward targets of the current external event.
+     */
+    public final java.util.List<ExecutableContent> toFinalize = new ArrayList<>();
+    public final java.util.List<String> toForward = new ArrayList<>();
+
+    /**
+     * Key to probe the plan cache.
+     */
+    public final TransitionPlanCache.Key planKey = new TransitionPlanCache.Key();
+
+    /**
+     * Key to probe the selection cache.
+     */
+    public final TransitionSelectionCache.Key selectionKey = new TransitionSelectionCache.Key();
+
+    private final HashMap<String, String[]> tokenPrefixes = new HashMap<>();
+
+    /**
+     * Gets the token-prefixes of an event name, see {@link EventDispatchIndex#token_prefixes(String)}.
+     * The result is kept for the most event names.
+     */
+    public String[] token_prefixes(String eventName) {
+        String[] prefixes = tokenPrefixes.get(eventName);
+        if (prefixes == null) {
+            if (tokenPrefixes.size() >= MAX_TOKEN_PREFIXES)
+                tokenPrefixes.clear();
+            prefixes = EventDispatchIndex.token_prefixes(eventName);
+            tokenPrefixes.put(eventName, prefixes);
+        }
+        return prefixes;
+    }
+
+    /**
+     * Gets the exit set buffer with the index, buffers are created on demand.
+     */
+    public StateSet exitSet(int index) {
+        if (index >= exitSets.length) {
+            final int n = exitSets.length;
+            exitSets = Arrays.copyOf(exitSets, Math.max(index + 1, 2 * n));
+            for (int i = n; i < exitSets.length; ++i)
+                exitSets[i] = new StateSet();
+        }
+        return exitSets[index];
+    }
+
+    /**
+     * Swaps two exit set buffers.
+     */
+    public void swapExitSets(int index1, int index2) {
+        final StateSet s = exitSets[index1];
+        exitSets[index1] = exitSets[index2];
+        exitSets[index2] = s;
+    }
+
+    /**
+     * Copies the set into {@link #transitionList}.
+     */
+    public List<Transition> toTransitionList(OrderedSet<Transition> transitions) {
+        final java.util.List<Transition> data = transitionList.data;
+        data.clear();
+        for (int i = 0, n = transitions.data.size(); i < n; ++i) {
+            data.add(transitions.data.get(i));
+        }
+        return transitionList;
+    }
+}
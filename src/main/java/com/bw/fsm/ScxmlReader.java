@@ -173,6 +173,7 @@ public class ScxmlReader {
                         break;
                 }
             }
+            statefulReader.fsm.prepare_model();
             return statefulReader.fsm;
         } catch (XMLStreamException xs) {
             throw new IOException(xs);
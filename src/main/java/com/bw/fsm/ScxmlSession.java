@@ -3,16 +3,26 @@ package com.bw.fsm;
 import com.bw.fsm.datamodel.GlobalData;
 import com.bw.fsm.tracer.Tracer;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
 /// Represents some external session.
 /// Holds thread-id and channel-sender to the external queue of the session.
 public class ScxmlSession {
 
     public Integer session_id;
 
+    /// The thread of the session. Null for pooled sessions, see "is_alive" and "join".
     public Thread thread;
     public BlockingQueue<Event> sender;
 
     /// global_data should be access after the FSM is finished to avoid deadlocks.
+    /// Null while the session is hibernated, replaced if the session is revived.
     public GlobalData global_data;
 
     /// Doc-id of the Invoke element that triggered this session.
@@ -23,9 +33,91 @@ public class ScxmlSession {
     /// State of the invoke or null.
     public State state;
 
+    private final CompletableFuture<ScxmlSession> terminated = new CompletableFuture<>();
+
+    /// Set while the session is passivated in the session store of the executor.
+    /// The session has no thread or task and no global data in this state.
+    final AtomicBoolean hibernated = new AtomicBoolean();
+
+    /// Set by the executor if the hibernate event was posted, reset by the session.
+    volatile boolean hibernate_requested;
+
+    /// Runs the cooperative child sessions, created on demand. See "ExecutorState.cooperative_children".
+    final AtomicReference<CooperativeScheduler> cooperative = new AtomicReference<>();
+
     public ScxmlSession(Integer id, BlockingQueue<Event> sender, Tracer tracer) {
         this.session_id = id;
         this.sender = sender;
         this.global_data = new GlobalData(tracer);
     }
+
+    /// True until the session has terminated. Works for all execution modes.
+    public boolean is_alive() {
+        return !terminated.isDone();
+    }
+
+    /// Waits until the session has terminated.
+    public void join() throws InterruptedException {
+        try {
+            terminated.get();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    /// Waits until the session has terminated or the timeout has elapsed.
+    /// Returns true if the session has terminated.
+    public boolean join(long timeout_ms) throws InterruptedException {
+        try {
+            terminated.get(timeout_ms, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ignored) {
+        } catch (TimeoutException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /// True while the session is passivated, see "FsmExecutor.set_hibernation".
+    /// The next event revives the session.
+    public boolean is_hibernated() {
+        return hibernated.get();
+    }
+
+    /// Puts an event in the urgent lane of the external queue. Urgent events are processed after the current
+    /// macrostep, before all queued normal events. Urgent events are not subject to the capacity of the queue.
+    public void post_urgent(Event event) {
+        sender.enqueue_urgent(event);
+    }
+
+    /// Cancels the session, the platform specific cancel event is posted as urgent event.
+    public void cancel() {
+        post_urgent(Event.new_simple(Fsm.EVENT_CANCEL_SESSION));
+    }
+
+    /// Future that is completed with this session after the session has terminated
+    /// and was removed from the executor.
+    public CompletableFuture<ScxmlSession> termination() {
+        // A copy, so callers can't complete the original.
+        return terminated.copy();
+    }
+
+    /// Adds a callback that is called after the session has terminated.
+    /// The callback is executed by the terminating thread, or immediately if the session has already terminated.
+    public void on_termination(Consumer<ScxmlSession> callback) {
+        terminated.thenAccept(callback);
+    }
+
+    /// Gets the scheduler for the cooperative child sessions of this session.
+    CooperativeScheduler cooperative_scheduler(FsmExecutor executor) {
+        CooperativeScheduler scheduler = cooperative.get();
+        if (scheduler == null) {
+            cooperative.compareAndSet(null, new CooperativeScheduler(sender, executor));
+            scheduler = cooperative.get();
+        }
+        return scheduler;
+    }
+
+    /// Called by the executor after the interpreter has finished.
+    void set_terminated() {
+        terminated.complete(this);
+    }
 }
@@ -0,0 +1,56 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.SharedFunctions;
+import com.bw.fsm.eventIoProcessor.EventIOProcessor;
+import com.bw.fsm.tracer.Tracer;
+
+import java.util.Map;
+
+/**
+ * The parts of a session start that don't depend on the session. Created once for all sessions that are started by
+ * {@link FsmExecutor#spawn(Fsm, java.util.stream.Stream, ActionWrapper, com.bw.fsm.tracer.TraceMode)}, or for each
+ * session by {@link Fsm#start_fsm_with_data}.
+ */
+public final class SessionBootstrap {
+
+    public final FsmExecutor executor;
+
+    /**
+     * The actions of the sessions. Shared (and frozen) if used for more than one session.
+     */
+    public final ActionWrapper actions;
+
+    /**
+     * Read-only map of the IO-Processors by type.
+     */
+    public final Map<String, EventIOProcessor> io_processors;
+
+    public final Tracer tracer;
+
+    /**
+     * If true, the start of each single session is not logged.
+     */
+    public final boolean bulk;
+
+    /**
+     * The functions of the datamodel, prepared once for all sessions (e.g. the script engine and the compiled
+     * function sources of ECMAScript). Null if each session adds the functions itself.
+     */
+    public final SharedFunctions shared_functions;
+
+    public SessionBootstrap(FsmExecutor executor, ActionWrapper actions, Map<String, EventIOProcessor> io_processors,
+                            Tracer tracer, boolean bulk) {
+        this(executor, actions, io_processors, tracer, bulk, null);
+    }
+
+    public SessionBootstrap(FsmExecutor executor, ActionWrapper actions, Map<String, EventIOProcessor> io_processors,
+                            Tracer tracer, boolean bulk, SharedFunctions shared_functions) {
+        this.executor = executor;
+        this.actions = actions;
+        this.io_processors = io_processors;
+        this.tracer = tracer;
+        this.bulk = bulk;
+        this.shared_functions = shared_functions;
+    }
+}
@@ -0,0 +1,194 @@
+package com.bw.fsm;
+
+import com.bw.fsm.datamodel.Datamodel;
+import com.bw.fsm.serializer.DefaultProtocolWriter;
+import com.bw.fsm.serializer.SessionSnapshotWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The journal file of one session, see {@link EventJournal}. Owned by the session, only
+ * {@link #force()} is called by other threads.<br>
+ * A checkpoint replaces the file: the new checkpoint is written to a temporary file, forced and moved over the
+ * old file. So the file never grows beyond one checkpoint and "checkpoint_interval" events.
+ */
+public final class SessionJournal {
+
+    /**
+     * Buffer for one record, the header is written after the payload.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        void begin(byte type) {
+            reset();
+            for (int i = 0; i < EventJournal.RECORD_HEADER_SIZE - 1; ++i)
+                write(0);
+            write(type);
+        }
+
+        ByteBuffer finish() {
+            final int length = count - EventJournal.RECORD_HEADER_SIZE;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private final EventJournal journal;
+    private final int session_id;
+    private final Path path;
+    private final RecordBuffer buffer = new RecordBuffer();
+    private final SessionSnapshotWriter writer = new SessionSnapshotWriter(new DefaultProtocolWriter(buffer));
+
+    private volatile FileChannel channel;
+    private int events_since_checkpoint;
+    private boolean checkpoint_due;
+
+    /**
+     * Events of the recovery, that are already in the file.
+     */
+    private final Set<Event> replayed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    SessionJournal(EventJournal journal, int session_id, EventJournal.Recovery recovery) {
+        this.journal = journal;
+        this.session_id = session_id;
+        this.path = journal.get_path(session_id);
+        if (recovery == null) {
+            checkpoint_due = true;
+        } else {
+            replayed.addAll(recovery.events);
+            events_since_checkpoint = recovery.events.size();
+            checkpoint_due = events_since_checkpoint >= journal.checkpoint_interval;
+        }
+    }
+
+    /**
+     * Writes an accepted external event to the file, before it is processed. Must be called after the first
+     * checkpoint.
+     */
+    public void append(Event event) {
+        if (!replayed.isEmpty() && replayed.remove(event))
+            return;
+        try {
+            buffer.begin(EventJournal.RECORD_EVENT);
+            writer.write_event(event);
+            write(buffer.finish());
+            if (++events_since_checkpoint >= journal.checkpoint_interval)
+                checkpoint_due = true;
+        } catch (IOException e) {
+            Log.exception("Failed to write journal of session #" + session_id, e);
+        }
+    }
+
+    /**
+     * Requests a checkpoint at the next stable configuration, e.g. after a delayed send was executed, as the
+     * send would otherwise be executed again by a recovery.
+     */
+    public void request_checkpoint() {
+        checkpoint_due = true;
+    }
+
+    /**
+     * Writes a checkpoint if requested or after "checkpoint_interval" events. Must be called in a stable
+     * configuration, before the next external event is taken.
+     */
+    public void checkpoint_if_due(Fsm fsm, Datamodel datamodel) {
+        if (checkpoint_due)
+            checkpoint(SessionSnapshot.capture(fsm, datamodel));
+    }
+
+    /**
+     * Replaces the file with a new checkpoint.
+     */
+    public void checkpoint(SessionSnapshot snapshot) {
+        checkpoint_due = false;
+        events_since_checkpoint = 0;
+        // Remaining events of a recovery are not part of the new file.
+        replayed.clear();
+        try {
+            buffer.begin(EventJournal.RECORD_CHECKPOINT);
+            writer.write(snapshot);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel tmp_channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer record = buffer.finish();
+                while (record.hasRemaining())
+                    tmp_channel.write(record);
+                tmp_channel.force(false);
+            }
+            close_channel();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.exception("Failed to write checkpoint of session #" + session_id, e);
+        }
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        FileChannel c = channel;
+        if (c == null) {
+            c = channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        while (record.hasRemaining())
+            c.write(record);
+        journal.mark_dirty(this);
+    }
+
+    /**
+     * Forces the written records to the disk. Called by the flusher of the journal.
+     */
+    void force() {
+        final FileChannel c = channel;
+        if (c != null) {
+            try {
+                c.force(false);
+            } catch (IOException e) {
+                // Closed by the session in between, e.g. by a checkpoint that has forced its own file.
+            }
+        }
+    }
+
+    private void close_channel() {
+        final FileChannel c = channel;
+        channel = null;
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                Log.exception("Failed to close journal of session #" + session_id, e);
+            }
+        }
+    }
+
+    /**
+     * Closes the file, e.g. if the session is hibernated. The file stays for a recovery.
+     */
+    public void close() {
+        force();
+        close_channel();
+    }
+
+    /**
+     * Closes and removes the file, called after the session has terminated.
+     */
+    public void delete() {
+        close_channel();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            Log.exception("Failed to remove journal of session #" + session_id, e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.bw.fsm;
+
+import com.bw.fsm.datamodel.Datamodel;
+import com.bw.fsm.datamodel.GlobalData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The runtime state of a session in a stable configuration: after a complete macrostep, while the session
+ * waits for the next external event.<br>
+ * A snapshot contains the configuration, the history values, the variables of the datamodel and the pending delayed
+ * sends. The model itself is not part of the snapshot. Sessions with running invoked sessions are not hibernated,
+ * as the events of the invoked sessions need the link to them. The binary format is
+ * written by {@link com.bw.fsm.serializer.SessionSnapshotWriter}.
+ */
+public class SessionSnapshot {
+
+    /**
+     * Name of the model, only for verification.
+     */
+    public String model;
+    /**
+     * Identity of the model, see {@link Fsm#get_model_id()}. A snapshot is only restored into the same model.
+     */
+    public String model_id;
+    public int session_id;
+    public Integer parent_session_id;
+    public String caller_invoke_id;
+
+    /**
+     * Names of the active states, in document order.
+     */
+    public final java.util.List<String> configuration = new ArrayList<>();
+
+    /**
+     * Names of the states with initialized data (late binding), see {@link GlobalData#initializedStates}.
+     */
+    public final java.util.List<String> initialized = new ArrayList<>();
+
+    /**
+     * The history values, key: name of the history state.
+     */
+    public final Map<String, java.util.List<String>> history = new HashMap<>();
+
+    public Map<String, Data> variables = new HashMap<>();
+
+    public final java.util.List<DelayedSend> delayed_sends = new ArrayList<>();
+
+    /**
+     * Creates a snapshot of the session. Must be called by the session, after a complete macrostep.
+     */
+    public static SessionSnapshot capture(Fsm fsm, Datamodel datamodel) {
+        final GlobalData gd = datamodel.global();
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.model = fsm.name;
+        snapshot.model_id = fsm.get_model_id();
+        snapshot.session_id = gd.session_id;
+        snapshot.parent_session_id = gd.parent_session_id;
+        snapshot.caller_invoke_id = gd.caller_invoke_id;
+        for (State s : gd.configuration) {
+            snapshot.configuration.add(s.name);
+        }
+        for (State s : gd.initializedStates) {
+            snapshot.initialized.add(s.name);
+        }
+        for (var entry : gd.historyValue.data.entrySet()) {
+            java.util.List<String> states = new ArrayList<>(entry.getValue().size());
+            for (State s : entry.getValue()) {
+                states.add(s.name);
+            }
+            snapshot.history.put(entry.getKey().name, states);
+        }
+        snapshot.variables = datamodel.get_variables();
+        snapshot.delayed_sends.addAll(gd.pending_delayed_send);
+        return snapshot;
+    }
+
+    /**
+     * Restores the snapshot into the (initialized) datamodel of a session and schedules the delayed sends.
+     *
+     * @return false if the snapshot doesn't match the model.
+     */
+    public boolean restore(Fsm fsm, Datamodel datamodel) {
+        final GlobalData gd = datamodel.global();
+        if (!fsm.get_model_id().equals(this.model_id)) {
+            Log.error("Snapshot of session #%d: model '%s' doesn't match '%s'", session_id, model, fsm.name);
+            return false;
+        }
+        gd.parent_session_id = this.parent_session_id;
+        gd.caller_invoke_id = this.caller_invoke_id;
+
+        for (String name : this.configuration) {
+            State s = fsm.statesNames.get(name);
+            if (s == null) {
+                Log.error("Snapshot of session #%d: unknown state '%s'", session_id, name);
+                return false;
+            }
+            fsm.addToConfiguration(gd, s);
+        }
+        for (String name : this.initialized) {
+            State s = fsm.statesNames.get(name);
+            if (s != null)
+                gd.initializedStates.add(s);
+        }
+        for (var entry : this.history.entrySet()) {
+            State h = fsm.statesNames.get(entry.getKey());
+            if (h == null) {
+                Log.error("Snapshot of session #%d: unknown state '%s'", session_id, entry.getKey());
+                return false;
+            }
+            StateSet states = new StateSet();
+            for (String name : entry.getValue()) {
+                State s = fsm.statesNames.get(name);
+                if (s != null)
+                    states.add(s);
+            }
+            gd.historyValue.put(h, states);
+        }
+        datamodel.set_variables(this.variables);
+        for (DelayedSend delayed_send : this.delayed_sends) {
+            delayed_send.schedule(gd);
+        }
+        gd.modified();
+        return true;
+    }
+}
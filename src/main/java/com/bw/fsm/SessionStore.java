@@ -0,0 +1,27 @@
+package com.bw.fsm;
+
+import java.io.IOException;
+
+/**
+ * Storage for snapshots of hibernated sessions, see {@link FsmExecutor#set_hibernation(SessionStore, long)}.
+ * Implementations must be thread-safe.
+ */
+public interface SessionStore {
+
+    /**
+     * Stores the snapshot, replaces an existing snapshot of the same session.
+     */
+    void save(SessionSnapshot snapshot) throws IOException;
+
+    /**
+     * Loads the snapshot of a session.
+     *
+     * @return The snapshot or null if no snapshot exists.
+     */
+    SessionSnapshot load(int session_id) throws IOException;
+
+    /**
+     * Removes the snapshot of a session, if it exists.
+     */
+    void remove(int session_id) throws IOException;
+}
@@ -131,11 +131,6 @@ public class State {
      */
     public final Map<String, Data> data = new HashMap<>();
 
-    /**
-     * True if the state was never entered before. Remembers that we need initialisation in lazy binding mode.
-     */
-    public boolean isFirstEntry = true;
-
     /**
      * The parent state. Only null for the pseudo root.
      */
@@ -146,6 +141,46 @@ public class State {
      */
     public @Nullable DoneData donedata;
 
+    /**
+     * The compiled transition lookup of this state. Created by {@link Fsm#prepare_model()}.
+     */
+    public EventDispatchIndex event_dispatch;
+
+    /**
+     * Number of eventless transitions of this state and its ancestors. Created by {@link Fsm#prepare_model()}.<br>
+     * If zero for all atomic states of a configuration, no eventless transition can be enabled.
+     */
+    public int eventless_count;
+
+    /**
+     * Dense index of the state in document order inside its model (0 for the first state).
+     * Used as index by {@link StateSet}. Created by {@link Fsm#prepare_model()}.
+     */
+    public int doc_index = -1;
+
+    /**
+     * Index of the state in a pre-order walk of the state hierarchy. Created by {@link Fsm#prepare_model()}.<br>
+     * Together with {@link #post_order} it encodes the sub-tree of the state as interval: "s" is a descendant of
+     * this state if and only if "pre_order &lt; s.pre_order" and "s.post_order &lt; post_order".
+     */
+    public int pre_order = -1;
+
+    /**
+     * Index of the state in a post-order walk of the state hierarchy. Created by {@link Fsm#prepare_model()}.
+     */
+    public int post_order = -1;
+
+    /**
+     * Number of proper ancestors. 0 for the pseudo root.
+     */
+    public int depth;
+
+    /**
+     * The proper ancestors, the pseudo root first. ancestors[depth-1] is the parent.
+     * Created by {@link Fsm#prepare_model()}. Must not be modified.
+     */
+    public State[] ancestors;
+
     /**
      * Initializes a new state. Used only during loading of the FSM, never dynamically during runtime.
      *
@@ -0,0 +1,310 @@
+package com.bw.fsm;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Set of states of one model, replaces the "OrderedSet" of the W3C Algorithm for states.<br>
+ * The set is a bit set indexed by {@link State#doc_index}, so membership is O(1), intersection tests are
+ * done word-parallel and iteration is always in document order (or reverse document order) without sorting.<br>
+ * The bits are stored in a plain long array (instead of java.util.BitSet) to allow copies without allocation,
+ * see {@link #copy_to(long[])}.<br>
+ * <br>
+ * <b>Actual implementation:</b><br>
+ * Different to the W3C "OrderedSet", the iteration order is not the insertion order. All places in the
+ * algorithm that depend on the order sort the sets in document, entry or exit order, which is
+ * what this set provides directly.<br>
+ * The set must only contain states of one prepared model (see {@link Fsm#prepare_model()}).
+ */
+public class StateSet implements Iterable<State> {
+
+    private long[] words;
+
+    /**
+     * The members, indexed by doc_index. Entries of removed states are not cleared.
+     */
+    private State[] members;
+
+    public StateSet() {
+        this(64);
+    }
+
+    public StateSet(int capacity) {
+        this.members = new State[capacity];
+        this.words = new long[(capacity + 63) >> 6];
+    }
+
+    /**
+     * Extension: The size (only informational)
+     */
+    public int size() {
+        int size = 0;
+        for (long w : words)
+            size += Long.bitCount(w);
+        return size;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Adds e to the set if it is not already a member
+     */
+    public void add(State e) {
+        final int idx = e.doc_index;
+        if (idx >= members.length) {
+            members = Arrays.copyOf(members, Math.max(idx + 1, 2 * members.length));
+        }
+        final int w = idx >> 6;
+        if (w >= words.length) {
+            words = Arrays.copyOf(words, Math.max(w + 1, 2 * words.length));
+        }
+        members[idx] = e;
+        words[w] |= 1L << idx;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Deletes e from the set
+     */
+    public void delete(State e) {
+        final int w = e.doc_index >> 6;
+        if (w < words.length)
+            words[w] &= ~(1L << e.doc_index);
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Adds all members of s that are not already members of the set
+     */
+    public void union(StateSet s) {
+        for (int i = s.nextSetBit(0); i >= 0; i = s.nextSetBit(i + 1)) {
+            add(s.members[i]);
+        }
+    }
+
+    /**
+     * Extension: Deletes all members of s from the set.
+     */
+    public void subtract(StateSet s) {
+        final int n = Math.min(words.length, s.words.length);
+        for (int i = 0; i < n; ++i) {
+            words[i] &= ~s.words[i];
+        }
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Is e a member of set?
+     */
+    public boolean isMember(State e) {
+        final int idx = e.doc_index;
+        final int w = idx >> 6;
+        return idx >= 0 && w < words.length && (words[w] & (1L << idx)) != 0;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Returns true if some element in the set satisfies the predicate f.
+     * <p>
+     * Returns false for an empty set.
+     */
+    public boolean some(Predicate<State> f) {
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (f.test(members[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Returns true if every element in the set satisfies the predicate f.
+     * <p>
+     * Returns true for an empty set.
+     */
+    public boolean every(Predicate<State> f) {
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (!f.test(members[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Returns true if this set and set s have at least one member in common
+     */
+    public boolean hasIntersection(StateSet s) {
+        final int n = Math.min(words.length, s.words.length);
+        for (int i = 0; i < n; ++i) {
+            if ((words[i] & s.words[i]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Is the set empty?
+     */
+    public boolean isEmpty() {
+        for (long w : words) {
+            if (w != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * <b>W3C says</b>:<br>
+     * Remove all elements from the set (make it empty)
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Converts the set to a list in document order.
+     */
+    public List<State> toList() {
+        List<State> l = new List<>(new java.util.ArrayList<>(size()));
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            l.push(members[i]);
+        }
+        return l;
+    }
+
+    /**
+     * Extension: The first member in document order or null if the set is empty.
+     */
+    public State first() {
+        return get(nextSetBit(0));
+    }
+
+    /**
+     * Extension: The member that follows "s" in document order or null.
+     * "s" doesn't need to be a member (it may have been deleted during iteration).
+     */
+    public State next(State s) {
+        return get(nextSetBit(s.doc_index + 1));
+    }
+
+    /**
+     * Extension: The last member in document order (the first in exit order) or null if the set is empty.
+     */
+    public State last() {
+        return get(previousSetBit((words.length << 6) - 1));
+    }
+
+    /**
+     * Extension: The member that precedes "s" in document order (follows in exit order) or null.
+     * "s" doesn't need to be a member (it may have been deleted during iteration).
+     */
+    public State previous(State s) {
+        return get(previousSetBit(s.doc_index - 1));
+    }
+
+    /**
+     * Extension: A copy of the membership bits, can be used as key for the set content.
+     */
+    public long[] fingerprint() {
+        long[] f = new long[fingerprint_length()];
+        copy_to(f);
+        return f;
+    }
+
+    /**
+     * Extension: Number of significant words of the membership bits.
+     */
+    public int fingerprint_length() {
+        int n = words.length;
+        while (n > 0 && words[n - 1] == 0)
+            --n;
+        return n;
+    }
+
+    /**
+     * Extension: Copies the significant words of the membership bits (see {@link #fingerprint_length()}).
+     *
+     * @param target The target, needs to have at least fingerprint_length entries.
+     */
+    public void copy_to(long[] target) {
+        System.arraycopy(words, 0, target, 0, fingerprint_length());
+    }
+
+    private int nextSetBit(int from) {
+        int w = from >> 6;
+        if (w >= words.length)
+            return -1;
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    private int previousSetBit(int from) {
+        if (from < 0 || words.length == 0)
+            return -1;
+        int w = from >> 6;
+        if (w >= words.length) {
+            w = words.length - 1;
+            from = (words.length << 6) - 1;
+        }
+        long word = words[w] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0)
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            if (w-- == 0)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    private State get(int idx) {
+        return idx >= 0 ? members[idx] : null;
+    }
+
+    /**
+     * Iterates in document order.
+     */
+    @Override
+    public Iterator<State> iterator() {
+        return new Iterator<>() {
+            State next = first();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public State next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                State s = next;
+                next = StateSet.this.next(s);
+                return s;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(10 * size() + 2);
+        sb.append('[');
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append(members[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package com.bw.fsm;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed timing wheel, used for delayed &lt;send> and watchdogs.<br>
+ * All timers of a wheel are handled by one worker thread. Scheduling and cancelling are O(1) and don't block:
+ * new and cancelled timers are handed over to the worker via lock-free queues, the buckets of the wheel are
+ * only touched by the worker. The worker sleeps while no timer is pending.<br>
+ * Tasks are executed by the worker thread and must be short, e.g. put an event into the queue of a session.
+ * Timers that expire in the same tick are executed in the order of their deadlines.
+ */
+public final class TimerWheel {
+
+    public static final long DEFAULT_TICK_MS = 5;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final ReentrantLock sharedLock = new ReentrantLock();
+    private static volatile TimerWheel shared;
+
+    /**
+     * Gets the wheel that is used by all executors, if not set otherwise (see {@link FsmExecutor#set_timer(TimerWheel)}).
+     */
+    public static TimerWheel shared() {
+        TimerWheel w = shared;
+        if (w == null) {
+            sharedLock.lock();
+            try {
+                w = shared;
+                if (w == null)
+                    shared = w = new TimerWheel("fsm_timer", DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+            } finally {
+                sharedLock.unlock();
+            }
+        }
+        return w;
+    }
+
+    private static final Comparator<FsmTimer> deadline_order = Comparator.comparingLong(t -> t.deadline);
+
+    private final long tick_nanos;
+    private final int mask;
+    private final FsmTimer[] heads;
+    private final FsmTimer[] tails;
+    private final long start_time = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<FsmTimer> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<FsmTimer> cancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of timers that are neither expired nor removed after cancel.
+     */
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private final ArrayList<FsmTimer> expired = new ArrayList<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * The next tick to process. Only used by the worker.
+     */
+    private long tick;
+
+    /**
+     * @param name       The name of the worker thread.
+     * @param tick_ms    The duration of a tick, the resolution of the timers.
+     * @param wheel_size The number of buckets, rounded up to a power of two.
+     */
+    public TimerWheel(String name, long tick_ms, int wheel_size) {
+        this.tick_nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tick_ms));
+        int size = Integer.highestOneBit(Math.max(1, wheel_size - 1)) << 1;
+        this.mask = size - 1;
+        this.heads = new FsmTimer[size];
+        this.tails = new FsmTimer[size];
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param delay_ms The delay in milliseconds.
+     * @param r        The task, executed by the worker thread of the wheel.
+     * @return The timer, that can be used to cancel the task.
+     */
+    public FsmTimer schedule(long delay_ms, Runnable r) {
+        return schedule(System.nanoTime(), delay_ms, r);
+    }
+
+    /**
+     * Schedules a task with a delay relative to a given time, e.g. to schedule several tasks relative to the
+     * same time.
+     *
+     * @param base_nanos The base time of the delay (System.nanoTime).
+     * @param delay_ms   The delay in milliseconds.
+     * @param r          The task, executed by the worker thread of the wheel.
+     * @return The timer, that can be used to cancel the task.
+     */
+    public FsmTimer schedule(long base_nanos, long delay_ms, Runnable r) {
+        FsmTimer timer = new FsmTimer(this, base_nanos - start_time + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay_ms)), r);
+        pending.add(timer);
+        if (outstanding.incrementAndGet() == 1) {
+            LockSupport.unpark(worker);
+        }
+        return timer;
+    }
+
+    /**
+     * Number of timers that are not expired yet.
+     */
+    public long get_pending_count() {
+        return outstanding.get();
+    }
+
+    /**
+     * Stops the worker. Pending timers will not expire.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    void cancelled(FsmTimer timer) {
+        cancelled.add(timer);
+    }
+
+    private void run() {
+        while (running) {
+            if (outstanding.get() == 0) {
+                LockSupport.park(this);
+                // The wheel is empty, continue with the current time.
+                tick = Math.max(tick, (System.nanoTime() - start_time) / tick_nanos);
+                continue;
+            }
+            long sleep = tick * tick_nanos - (System.nanoTime() - start_time);
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+            transfer_pending();
+            remove_cancelled();
+            expire_bucket((int) (tick & mask));
+            ++tick;
+        }
+    }
+
+    private void transfer_pending() {
+        FsmTimer timer;
+        while ((timer = pending.poll()) != null) {
+            if (timer.is_cancelled())
+                continue;
+            long deadline_tick = Math.max(tick, (timer.deadline + tick_nanos - 1) / tick_nanos);
+            timer.rounds = (deadline_tick - tick) / heads.length;
+            int bucket = (int) (deadline_tick & mask);
+            timer.bucket = bucket;
+            timer.next = null;
+            timer.prev = tails[bucket];
+            if (timer.prev == null)
+                heads[bucket] = timer;
+            else
+                timer.prev.next = timer;
+            tails[bucket] = timer;
+        }
+    }
+
+    private void remove_cancelled() {
+        FsmTimer timer;
+        while ((timer = cancelled.poll()) != null) {
+            if (timer.bucket >= 0)
+                unlink(timer);
+            outstanding.decrementAndGet();
+        }
+    }
+
+    private void unlink(FsmTimer timer) {
+        final int bucket = timer.bucket;
+        if (timer.prev == null)
+            heads[bucket] = timer.next;
+        else
+            timer.prev.next = timer.next;
+        if (timer.next == null)
+            tails[bucket] = timer.prev;
+        else
+            timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = -1;
+    }
+
+    private void expire_bucket(int bucket) {
+        FsmTimer timer = heads[bucket];
+        while (timer != null) {
+            FsmTimer next = timer.next;
+            if (timer.rounds <= 0) {
+                unlink(timer);
+                expired.add(timer);
+            } else {
+                --timer.rounds;
+            }
+            timer = next;
+        }
+        if (expired.isEmpty())
+            return;
+        expired.sort(deadline_order);
+        for (int i = 0, n = expired.size(); i < n; ++i) {
+            timer = expired.get(i);
+            if (!timer.expire())
+                continue;
+            // Counted before the task runs, so the task sees the timer as no longer pending.
+            outstanding.decrementAndGet();
+            try {
+                timer.run_task();
+            } catch (Throwable t) {
+                Log.exception("Timer task failed", t);
+            }
+        }
+        expired.clear();
+    }
+}
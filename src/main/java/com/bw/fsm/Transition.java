@@ -16,6 +16,12 @@ public class Transition {
     public TransitionType transition_type = TransitionType.External;
     public ExecutableContentBlock content;
 
+    /**
+     * Dense index of eventless transitions with condition inside the model, -1 for all other transitions.
+     * Used to memorize false conditions per session. Created by {@link Fsm#prepare_model()}.
+     */
+    public int guard_index = -1;
+
     @Override
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder(20);
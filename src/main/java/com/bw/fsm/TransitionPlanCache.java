@@ -0,0 +1,190 @@
+package com.bw.fsm;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of transition execution plans, owned by a {@link Fsm} model and shared by all its sessions.<br>
+ * For transitions that don't target history states, the exit set, the entry set and the states entered by
+ * default depend only on the set of transitions and the current configuration. A plan stores these sets,
+ * so "microstep" can skip computeExitSet, computeEntrySet and all the set algebra on repeated cycles through
+ * the same states.<br>
+ * The sets of a plan are read-only after creation.<br>
+ * Lookups don't lock, plans are evicted in approximated LRU order (see {@link ClockCache}).
+ */
+public class TransitionPlanCache {
+
+    public static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * A precomputed microstep.
+     */
+    public static class Plan {
+        /**
+         * The states to exit, iterate in exit order (last/previous).
+         */
+        public final StateSet statesToExit;
+        /**
+         * The states to enter, iterate in entry order (first/next).
+         */
+        public final StateSet statesToEnter;
+        public final StateSet statesForDefaultEntry;
+
+        public Plan(StateSet statesToExit, StateSet statesToEnter, StateSet statesForDefaultEntry) {
+            this.statesToExit = statesToExit;
+            this.statesToEnter = statesToEnter;
+            this.statesForDefaultEntry = statesForDefaultEntry;
+        }
+    }
+
+    /**
+     * Marker for keys that can't be planned in advance (e.g. a default initial transition that targets a history state).
+     */
+    public static final Plan NOT_CACHEABLE = new Plan(null, null, null);
+
+    /**
+     * The key: the transitions and the configuration before the microstep.<br>
+     * A key can be re-used to probe the cache without allocation (see {@link #set(List, StateSet)}),
+     * use {@link #copy()} to store it.
+     */
+    public static final class Key {
+        private Transition[] transitions;
+        private int transitionCount;
+        private long[] configuration;
+        private int configurationLength;
+        private int hash;
+
+        /**
+         * Creates an empty key, to be filled by {@link #set(List, StateSet)}.
+         */
+        public Key() {
+            this.transitions = new Transition[4];
+            this.configuration = new long[4];
+        }
+
+        public Key(List<Transition> transitions, StateSet configuration) {
+            this();
+            set(transitions, configuration);
+        }
+
+        /**
+         * Sets the content of the key. Buffers are only re-allocated if they are too small.
+         */
+        public void set(List<Transition> transitions, StateSet configuration) {
+            final int tn = transitions.data.size();
+            if (tn > this.transitions.length)
+                this.transitions = new Transition[tn];
+            int h = 1;
+            for (int i = 0; i < tn; ++i) {
+                Transition t = transitions.data.get(i);
+                this.transitions[i] = t;
+                h = 31 * h + t.doc_id;
+            }
+            this.transitionCount = tn;
+
+            final int cn = configuration.fingerprint_length();
+            if (cn > this.configuration.length)
+                this.configuration = new long[cn];
+            configuration.copy_to(this.configuration);
+            for (int i = 0; i < cn; ++i) {
+                long w = this.configuration[i];
+                h = 31 * h + (int) (w ^ (w >>> 32));
+            }
+            this.configurationLength = cn;
+            this.hash = h;
+        }
+
+        /**
+         * Creates a copy with buffers of exact size.
+         */
+        public Key copy() {
+            Key k = new Key();
+            k.transitions = Arrays.copyOf(transitions, transitionCount);
+            k.transitionCount = transitionCount;
+            k.configuration = Arrays.copyOf(configuration, configurationLength);
+            k.configurationLength = configurationLength;
+            k.hash = hash;
+            return k;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (obj instanceof Key other) {
+                if (other.hash != hash || other.transitionCount != transitionCount
+                        || other.configurationLength != configurationLength)
+                    return false;
+                for (int i = 0; i < transitionCount; ++i) {
+                    if (transitions[i] != other.transitions[i])
+                        return false;
+                }
+                return Arrays.equals(configuration, 0, configurationLength, other.configuration, 0, configurationLength);
+            }
+            return false;
+        }
+    }
+
+    private final ClockCache<Key, Plan> plans;
+
+    public TransitionPlanCache(int capacity) {
+        this.plans = new ClockCache<>(capacity);
+    }
+
+    /**
+     * True if the cache is enabled (capacity > 0).
+     */
+    public boolean enabled() {
+        return plans.enabled();
+    }
+
+    /**
+     * Gets a plan and counts the hit or miss.
+     *
+     * @return The plan, {@link #NOT_CACHEABLE} or null if nothing is stored for the key.
+     */
+    public Plan get(Key key) {
+        return plans.get(key);
+    }
+
+    public void put(Key key, Plan plan) {
+        plans.put(key, plan);
+    }
+
+    /**
+     * Sets the maximal number of plans. 0 disables the cache.
+     */
+    public void setCapacity(int capacity) {
+        plans.setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return plans.getCapacity();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public long getHits() {
+        return plans.getHits();
+    }
+
+    public long getMisses() {
+        return plans.getMisses();
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("plans %d/%d, hits %d, misses %d", plans.size(), plans.getCapacity(),
+                plans.getHits(), plans.getMisses());
+    }
+}
@@ -0,0 +1,156 @@
+package com.bw.fsm;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the (conflict-free) result of "selectTransitions", owned by a {@link Fsm} model and shared by
+ * all its sessions.<br>
+ * If none of the candidate transitions has a condition and none of the selected transitions targets a history
+ * state, the result depends only on the configuration and the name of the event. This is the normal case
+ * for models with the null datamodel or protocol machines without guards.<br>
+ * Lookups don't lock, entries are evicted in approximated LRU order (see {@link ClockCache}).<br>
+ * The cache is disabled by default (capacity 0), see {@link #setCapacity(int)}.
+ */
+public class TransitionSelectionCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The key: the event name and the configuration.<br>
+     * A key can be re-used to probe the cache without allocation (see {@link #set(String, StateSet)}),
+     * use {@link #copy()} to store it.
+     */
+    public static final class Key {
+        private String eventName;
+        private long[] configuration;
+        private int configurationLength;
+        private int hash;
+
+        /**
+         * Creates an empty key, to be filled by {@link #set(String, StateSet)}.
+         */
+        public Key() {
+            this.configuration = new long[4];
+        }
+
+        public Key(String eventName, StateSet configuration) {
+            this();
+            set(eventName, configuration);
+        }
+
+        /**
+         * Sets the content of the key. The buffer is only re-allocated if it is too small.
+         */
+        public void set(String eventName, StateSet configuration) {
+            this.eventName = eventName;
+            int h = eventName.hashCode();
+            final int cn = configuration.fingerprint_length();
+            if (cn > this.configuration.length)
+                this.configuration = new long[cn];
+            configuration.copy_to(this.configuration);
+            for (int i = 0; i < cn; ++i) {
+                long w = this.configuration[i];
+                h = 31 * h + (int) (w ^ (w >>> 32));
+            }
+            this.configurationLength = cn;
+            this.hash = h;
+        }
+
+        /**
+         * Creates a copy with a buffer of exact size.
+         */
+        public Key copy() {
+            Key k = new Key();
+            k.eventName = eventName;
+            k.configuration = Arrays.copyOf(configuration, configurationLength);
+            k.configurationLength = configurationLength;
+            k.hash = hash;
+            return k;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (obj instanceof Key other) {
+                return other.hash == hash && other.configurationLength == configurationLength
+                        && eventName.equals(other.eventName)
+                        && Arrays.equals(configuration, 0, configurationLength, other.configuration, 0, configurationLength);
+            }
+            return false;
+        }
+    }
+
+    private final ClockCache<Key, Transition[]> selections;
+
+    public TransitionSelectionCache(int capacity) {
+        this.selections = new ClockCache<>(capacity);
+    }
+
+    /**
+     * True if the cache is enabled (capacity > 0).
+     */
+    public boolean enabled() {
+        return selections.enabled();
+    }
+
+    /**
+     * Gets the selected transitions (in the order of the states that selected them) and counts the hit or miss.
+     *
+     * @return The transitions or null if nothing is stored for the key.
+     */
+    public Transition[] get(Key key) {
+        return selections.get(key);
+    }
+
+    public void put(Key key, Transition[] transitions) {
+        selections.put(key, transitions);
+    }
+
+    /**
+     * Sets the maximal number of entries. 0 disables the cache.
+     */
+    public void setCapacity(int capacity) {
+        selections.setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return selections.getCapacity();
+    }
+
+    public int size() {
+        return selections.size();
+    }
+
+    public long getHits() {
+        return selections.getHits();
+    }
+
+    public long getMisses() {
+        return selections.getMisses();
+    }
+
+    /**
+     * Ratio of hits to all lookups, 0 if there was no lookup.
+     */
+    public double getHitRate() {
+        final long hits = selections.getHits();
+        final long lookups = hits + selections.getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public void clear() {
+        selections.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("selections %d/%d, hits %d, misses %d", selections.size(), selections.getCapacity(),
+                selections.getHits(), selections.getMisses());
+    }
+}
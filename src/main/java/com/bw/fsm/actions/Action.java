@@ -9,4 +9,10 @@ import java.util.List;
 public interface Action {
     /// Executes the action.
     Data execute(List<Data> arguments, GlobalData global) throws Exception;
+
+    /// True if the action doesn't modify any data and its result depends only on the arguments,
+    /// data and the configuration. Conditions that call other actions are evaluated each time.
+    default boolean is_side_effect_free() {
+        return false;
+    }
 }
@@ -14,13 +14,49 @@ public class ActionWrapper {
 
     public Map<String, Action> actions = new HashMap<>();
 
+    private boolean frozen;
+
+    /**
+     * Adds an action. If the wrapper is frozen, only actions that already exist are accepted (and ignored),
+     * so datamodels can add their functions as usual.
+     */
     public void add_action(String name, Action action) {
-        this.actions.put(name, action);
+        if (this.frozen) {
+            if (!this.actions.containsKey(name))
+                throw new IllegalStateException(String.format("Action '%s' can't be added to shared actions", name));
+        } else {
+            this.actions.put(name, action);
+        }
+    }
+
+    /**
+     * Creates a (not frozen) copy.
+     */
+    public ActionWrapper copy() {
+        ActionWrapper copy = new ActionWrapper();
+        copy.actions.putAll(this.actions);
+        return copy;
+    }
+
+    /**
+     * Makes the wrapper read-only, so it can be shared by sessions.
+     */
+    public void freeze() {
+        if (!this.frozen) {
+            this.actions = Map.copyOf(this.actions);
+            this.frozen = true;
+        }
+    }
+
+    public boolean is_frozen() {
+        return this.frozen;
     }
 
     public Data execute(String action_name, List<Data> arguments, GlobalData global) throws Exception {
         Action action = this.actions.get(action_name);
         if (action != null) {
+            if (!action.is_side_effect_free())
+                global.modified();
             return action.execute(arguments, global);
         } else {
             throw new IllegalArgumentException(String.format("Action '%s' not found", action_name));
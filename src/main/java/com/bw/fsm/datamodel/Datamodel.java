@@ -6,6 +6,7 @@ import com.bw.fsm.executableContent.Parameter;
 import com.bw.fsm.expressionEngine.ExpressionException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -108,6 +109,15 @@ public abstract class Datamodel {
      */
     public abstract void add_functions(Fsm fsm);
 
+    /**
+     * Adds the functions for a session that was started with a shared {@link SessionBootstrap}. The functions were
+     * prepared once by {@link DatamodelFactory#share_functions} and the actions are already complete.<br>
+     * The default implementation calls {@link #add_functions(Fsm)}.
+     */
+    public void add_shared_functions(Fsm fsm, SharedFunctions functions) {
+        add_functions(fsm);
+    }
+
     /**
      * sets '_ioprocessors'.
      */
@@ -218,6 +228,29 @@ public abstract class Datamodel {
     public void clear() {
     }
 
+    /**
+     * Gets the variables of the session for a snapshot (see {@link SessionSnapshot}).
+     * System variables (with prefix "_") and functions are not included.<br>
+     * Default implementation returns a copy of {@link GlobalData#data}.
+     */
+    public Map<String, Data> get_variables() {
+        HashMap<String, Data> variables = new HashMap<>();
+        for (var entry : this.global().data.entrySet()) {
+            if (!entry.getKey().startsWith("_"))
+                variables.put(entry.getKey(), entry.getValue().getCopy());
+        }
+        return variables;
+    }
+
+    /**
+     * Restores the variables from a snapshot, see {@link #get_variables()}.<br>
+     * Default implementation puts the values into {@link GlobalData#data}.
+     */
+    public void set_variables(Map<String, Data> variables) {
+        this.global().data.putAll(variables);
+        this.global().modified();
+    }
+
     /**
      * "log" function, use for &lt;log> content.
      */
@@ -261,6 +294,16 @@ public abstract class Datamodel {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Extension: Gets a counter that changes whenever data that conditions can read may have changed
+     * (see {@link GlobalData#modified()}). As long as the counter doesn't change, a condition without side
+     * effects gives the same result and doesn't need to be evaluated again.<br>
+     * Returns -1 if the datamodel doesn't track modifications (default), then all conditions are evaluated.
+     */
+    public long modification_epoch() {
+        return -1;
+    }
+
     /**
      * Executes content.
      */
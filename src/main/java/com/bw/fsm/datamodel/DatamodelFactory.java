@@ -1,5 +1,6 @@
 package com.bw.fsm.datamodel;
 
+import com.bw.fsm.Fsm;
 import com.bw.fsm.Log;
 import com.bw.fsm.datamodel.null_datamodel.NullDatamodel;
 import org.jetbrains.annotations.NotNull;
@@ -13,6 +14,18 @@ public abstract class DatamodelFactory {
     /// Create a NEW datamodel.
     public abstract Datamodel create(GlobalData global_data, Map<String, String> options);
 
+    /**
+     * Prepares the functions once for all sessions of a {@link com.bw.fsm.SessionBootstrap}. The actions of the
+     * global data are not frozen yet, the functions can be added to them.<br>
+     * The default implementation calls {@link Datamodel#add_functions(Fsm)} of a temporary datamodel.
+     *
+     * @return The functions, used by {@link Datamodel#add_shared_functions(Fsm, SharedFunctions)} of the sessions.
+     */
+    public SharedFunctions share_functions(Fsm fsm, GlobalData global_data, Map<String, String> options) {
+        create(global_data, options).add_functions(fsm);
+        return new SharedFunctions();
+    }
+
     private static final Map<String, DatamodelFactory> datamodel_factories = new HashMap<>();
 
     /**
@@ -28,12 +41,26 @@ public abstract class DatamodelFactory {
             String name, GlobalData global_data,
             Map<String, String> options
     ) {
+        return get_factory(name).create(global_data, options);
+    }
+
+    /**
+     * See {@link #share_functions(Fsm, GlobalData, Map)}.
+     */
+    @NotNull
+    public static SharedFunctions share_datamodel_functions(
+            String name, Fsm fsm, GlobalData global_data,
+            Map<String, String> options
+    ) {
+        return get_factory(name).share_functions(fsm, global_data, options);
+    }
+
+    private static DatamodelFactory get_factory(String name) {
         DatamodelFactory factory = datamodel_factories.get((name == null || name.isEmpty()) ? "null" : name.toLowerCase(Locale.CANADA));
-        if (factory != null) {
-            return factory.create(global_data, options);
-        } else {
+        if (factory == null) {
             Log.panic("Unsupported Data Model '%s'", name);
-            return datamodel_factories.get(NullDatamodel.NULL_DATAMODEL).create(global_data, options);
+            factory = datamodel_factories.get(NullDatamodel.NULL_DATAMODEL);
         }
+        return factory;
     }
 }
@@ -8,8 +8,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * <b>W3C says</b>:<br>
@@ -27,13 +29,61 @@ public class GlobalData {
     public String source;
     public FsmExecutor executor;
     public ActionWrapper actions = new ActionWrapper();
+    /**
+     * The functions of the datamodel if the session was started with a shared {@link SessionBootstrap}, else null.
+     */
+    public SharedFunctions shared_functions;
     public @NotNull
     final Tracer tracer;
-    public OrderedSet<State> configuration = new OrderedSet<>();
-    public OrderedSet<State> statesToInvoke = new OrderedSet<>();
-    public HashTable<State, OrderedSet<State>> historyValue = new HashTable<>();
+    public StateSet configuration = new StateSet();
+    /**
+     * Sum of {@link State#eventless_count} of the atomic states in the configuration.
+     */
+    public int eventless_count;
+    /**
+     * Number of child states for which "isInFinalState" is true, for each active parallel state.
+     * Indexed by {@link State#doc_index}.
+     */
+    public int[] completed_regions = new int[0];
+    public StateSet statesToInvoke = new StateSet();
+    /**
+     * States that were entered at least once, replaces "s.isFirstEntry" of the W3C algorithm for late binding.
+     * The model itself is never modified by a session.
+     */
+    public final StateSet initializedStates = new StateSet();
+    public HashTable<State, StateSet> historyValue = new HashTable<>();
     public boolean running = false;
 
+    /**
+     * Set if the session was hibernated by this run of the interpreter, see {@link Fsm#hibernate(Datamodel)}.
+     * The next run uses new global data.
+     */
+    public boolean hibernated = false;
+
+    /**
+     * Time (System.nanoTime) the session has taken its last external event. Read by the executor to find idle
+     * sessions.
+     */
+    public volatile long last_activity = System.nanoTime();
+
+    /**
+     * Modification epoch of the session, see {@link Datamodel#modification_epoch()}.
+     * Incremented on each change of data or the configuration. Datamodels that provide "_event" to conditions
+     * also need to mark the change of the current event.
+     */
+    public long modification_epoch;
+
+    /**
+     * Memorized false conditions of eventless transitions, indexed by {@link Transition#guard_index}.
+     * The value is the modification epoch of the evaluation + 1 (0 if not set).
+     */
+    public long[] false_guard_epochs = new long[0];
+
+    /**
+     * Re-used buffers of the algorithm, owned by the session thread.
+     */
+    public final ScratchBuffers scratch = new ScratchBuffers();
+
     public Queue<Event> internalQueue = new Queue<>();
 
     public BlockingQueue<Event> externalQueue = new BlockingQueue<>();
@@ -61,11 +111,23 @@ public class GlobalData {
     public Map<String, Data> environment = new HashMap<>();
 
     /**
-     * Stores any delayed send (with a "sendid"), Key: sendid
+     * Stores any delayed send (with a "sendid"), Key: sendid. Sends with the same id are all pending, until they
+     * are sent or cancelled.<br>
+     * Only accessed by the session, also for expired timers (see {@link Event#delayed_action}).
+     */
+    public Map<String, java.util.List<DelayedSend>> delayed_send = new HashMap<>();
+
+    /**
+     * All pending delayed sends, with or without "sendid".
      */
-    public Map<String, FsmTimer> delayed_send = new HashMap<>();
+    public final Set<DelayedSend> pending_delayed_send = new HashSet<>();
     public Map<String, EventIOProcessor> io_processors = new HashMap<>();
 
+    /**
+     * The journal of the session or null, see {@link EventJournal}.
+     */
+    public SessionJournal journal;
+
     /**
      * For datamodels, that need an explicit storage.
      */
@@ -75,6 +137,13 @@ public class GlobalData {
         this.tracer = Objects.requireNonNull(tracer);
     }
 
+    /**
+     * Marks a possible modification of data that conditions may read.
+     */
+    public void modified() {
+        ++modification_epoch;
+    }
+
     public void enqueue_internal(Event event) {
         if (StaticOptions.trace_event) {
             tracer.event_internal_send(session_id, event);
@@ -0,0 +1,9 @@
+package com.bw.fsm.datamodel;
+
+/**
+ * The functions of a datamodel, prepared once for all sessions of a {@link com.bw.fsm.SessionBootstrap}
+ * (see {@link DatamodelFactory#share_functions}). Datamodels can extend it for state that is shared by the
+ * datamodels of the sessions. Must be thread-safe, as the sessions run concurrently.
+ */
+public class SharedFunctions {
+}
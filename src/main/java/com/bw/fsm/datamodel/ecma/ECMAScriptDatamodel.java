@@ -4,6 +4,7 @@ import com.bw.fsm.*;
 import com.bw.fsm.datamodel.*;
 import com.bw.fsm.eventIoProcessor.EventIOProcessor;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.HostAccess;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
@@ -36,17 +37,61 @@ public class ECMAScriptDatamodel extends Datamodel {
     protected Value bindings;
     protected Context context;
 
+    /**
+     * The engine and the functions shared by the sessions of a {@link SessionBootstrap}. The contexts of the sessions
+     * use the same engine, so the compiled code of equal sources (the functions and the scripts of the model)
+     * is shared.
+     */
+    public static class ECMAScriptFunctions extends SharedFunctions {
+        public final Engine engine;
+        public final Source functions;
+
+        public ECMAScriptFunctions(Engine engine, Source functions) {
+            this.engine = engine;
+            this.functions = functions;
+        }
+    }
+
     public ECMAScriptDatamodel(GlobalData global_data) {
         this.global_data = global_data;
 
-        context = Context.newBuilder("js")
-                .option("engine.WarnInterpreterOnly", StaticOptions.debug ? "true" : "false")
+        Context.Builder builder = Context.newBuilder("js")
                 .option("js.strict", "true")
                 .allowHostAccess(HostAccess.ALL)
                 .out(Log.getPrintStream())
+                .err(Log.getPrintStream());
+        if (global_data.shared_functions instanceof ECMAScriptFunctions shared) {
+            // Engine options are set by the shared engine.
+            builder.engine(shared.engine);
+        } else {
+            builder.option("engine.WarnInterpreterOnly", StaticOptions.debug ? "true" : "false");
+        }
+        context = builder.build();
+        bindings = context.getBindings("js");
+    }
+
+    /**
+     * Key of the engine in the shared resources of the executor, see {@link com.bw.fsm.FsmExecutor#get_shared_resource}.
+     */
+    public static final String ENGINE_RESOURCE = ECMA_SCRIPT + ".engine";
+
+    /**
+     * Creates the source of the functions for all sessions of a {@link SessionBootstrap}.<br>
+     * The engine is shared by all bootstraps of the executor and closed when the executor is shut down.
+     */
+    public static ECMAScriptFunctions create_functions(GlobalData global_data) {
+        final Engine engine = global_data.executor == null
+                ? create_engine()
+                : global_data.executor.get_shared_resource(ENGINE_RESOURCE, Engine.class, ECMAScriptDatamodel::create_engine);
+        return new ECMAScriptFunctions(engine, Source.create("js", get_functions_source(global_data)));
+    }
+
+    private static Engine create_engine() {
+        return Engine.newBuilder()
+                .option("engine.WarnInterpreterOnly", StaticOptions.debug ? "true" : "false")
+                .out(Log.getPrintStream())
                 .err(Log.getPrintStream())
                 .build();
-        bindings = context.getBindings("js");
     }
 
     @Override
@@ -68,7 +113,7 @@ public class ECMAScriptDatamodel extends Datamodel {
 
         @HostAccess.Export
         public boolean in(String name) {
-            for (State s : global().configuration.data) {
+            for (State s : global().configuration) {
                 if (s.name.equals(name))
                     return true;
             }
@@ -98,9 +143,10 @@ public class ECMAScriptDatamodel extends Datamodel {
 
     }
 
-    @Override
-    public void add_functions(Fsm fsm) {
-        final GlobalData global = global();
+    /**
+     * Gets the script with the functions for the actions, "In" and "log".
+     */
+    protected static String get_functions_source(GlobalData global) {
         StringBuilder functions = new StringBuilder(300);
         for (String name : global.actions.actions.keySet()) {
             functions.append(
@@ -114,15 +160,33 @@ public class ECMAScriptDatamodel extends Datamodel {
         functions.append("function In(state){ return __helper.in(state);}\n");
         // Implement "log" function.
         functions.append("function log(msg){ __helper.log(msg);}\n");
+        return functions.toString();
+    }
 
+    @Override
+    public void add_functions(Fsm fsm) {
         bindings.putMember("__helper", new Helper());
         try {
-            evalSource(functions.toString());
+            evalSource(get_functions_source(global()));
         } catch (Exception e) {
             Log.exception("Failed to add functions", e);
         }
     }
 
+    @Override
+    public void add_shared_functions(Fsm fsm, SharedFunctions functions) {
+        if (functions instanceof ECMAScriptFunctions shared) {
+            bindings.putMember("__helper", new Helper());
+            try {
+                context.eval(shared.functions);
+            } catch (Exception e) {
+                Log.exception("Failed to add functions", e);
+            }
+        } else {
+            add_functions(fsm);
+        }
+    }
+
     protected @NotNull Data evalSource(String sourceText) throws ScriptException {
         try {
             if (StaticOptions.trace_script)
@@ -312,6 +376,30 @@ public class ECMAScriptDatamodel extends Datamodel {
         bindings.getMemberKeys().clear();
     }
 
+    /**
+     * Gets all global variables of the script context, without system variables and functions.
+     */
+    @Override
+    public Map<String, Data> get_variables() {
+        HashMap<String, Data> variables = new HashMap<>();
+        for (String name : bindings.getMemberKeys()) {
+            if (name.startsWith("_"))
+                continue;
+            Value value = bindings.getMember(name);
+            if (value != null && !value.canExecute()) {
+                variables.put(name, js_to_data_value(value));
+            }
+        }
+        return variables;
+    }
+
+    @Override
+    public void set_variables(Map<String, Data> variables) {
+        for (var entry : variables.entrySet()) {
+            this.set(entry.getKey(), entry.getValue(), true);
+        }
+    }
+
     @Override
     public @NotNull Data execute(Data script) {
         Data res = evalData(script);
@@ -1,8 +1,10 @@
 package com.bw.fsm.datamodel.ecma;
 
+import com.bw.fsm.Fsm;
 import com.bw.fsm.datamodel.Datamodel;
 import com.bw.fsm.datamodel.DatamodelFactory;
 import com.bw.fsm.datamodel.GlobalData;
+import com.bw.fsm.datamodel.SharedFunctions;
 
 import java.util.Map;
 
@@ -11,4 +13,12 @@ public class ECMAScriptDatamodelFactory extends DatamodelFactory {
     public Datamodel create(GlobalData global_data, Map<String, String> options) {
         return new ECMAScriptDatamodel(global_data);
     }
+
+    /**
+     * The functions don't change the actions, so no datamodel (and no context) is needed to prepare them.
+     */
+    @Override
+    public SharedFunctions share_functions(Fsm fsm, GlobalData global_data, Map<String, String> options) {
+        return ECMAScriptDatamodel.create_functions(global_data);
+    }
 }
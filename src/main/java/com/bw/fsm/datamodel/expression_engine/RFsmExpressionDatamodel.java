@@ -4,18 +4,21 @@ import com.bw.fsm.Data;
 import com.bw.fsm.ExecutableContent;
 import com.bw.fsm.Fsm;
 import com.bw.fsm.ScriptProducer;
+import com.bw.fsm.StaticOptions;
 import com.bw.fsm.actions.ActionWrapper;
 import com.bw.fsm.datamodel.Datamodel;
 import com.bw.fsm.datamodel.DatamodelFactory;
 import com.bw.fsm.datamodel.GlobalData;
 import com.bw.fsm.datamodel.JsonScriptProducer;
+import com.bw.fsm.datamodel.SharedFunctions;
 import com.bw.fsm.datamodel.expression_engine.action.*;
 import com.bw.fsm.expressionEngine.Expression;
 import com.bw.fsm.expressionEngine.ExpressionException;
 import com.bw.fsm.expressionEngine.ExpressionParser;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RFsmExpressionDatamodel extends Datamodel {
 
@@ -31,7 +34,12 @@ public class RFsmExpressionDatamodel extends Datamodel {
     }
 
     public GlobalData global_data;
-    public HashMap<Integer, Expression> compilations = new HashMap<>();
+
+    /**
+     * Parsed expressions by {@link com.bw.fsm.datamodel.SourceCode#source_id}. Replaced by the shared map of the model
+     * in {@link #add_functions(Fsm)}, so each expression of the model is parsed only once for all sessions.
+     */
+    public Map<Integer, Object> compilations = new ConcurrentHashMap<>();
 
     @Override
     public GlobalData global() {
@@ -55,17 +63,24 @@ public class RFsmExpressionDatamodel extends Datamodel {
     @Override
     public void add_functions(Fsm fsm) {
         GlobalData gd = global();
+        this.compilations = fsm.compiled_scripts;
         add_internal_functions_to_wrapper(gd.actions);
         gd.actions.add_action("In", new In(fsm));
 
     }
 
+    /**
+     * The internal functions are already part of the shared actions.
+     */
+    @Override
+    public void add_shared_functions(Fsm fsm, SharedFunctions functions) {
+        this.compilations = fsm.compiled_scripts;
+    }
+
     @Override
     public boolean execute_condition(Data condition) {
         try {
-            JsonScriptProducer scripter = new JsonScriptProducer();
-            condition.as_script(scripter);
-            Data r = ExpressionParser.execute(scripter.finish(), global());
+            Data r = evaluate(condition);
             return switch (r.type) {
                 case Boolean -> ((Data.Boolean) r).value;
                 case Integer, Double -> r.as_number().doubleValue() != 0;
@@ -81,6 +96,14 @@ public class RFsmExpressionDatamodel extends Datamodel {
         }
     }
 
+    /**
+     * All modifications are done by the expression engine, that marks them in the global data.
+     */
+    @Override
+    public long modification_epoch() {
+        return global_data.modification_epoch;
+    }
+
     @Override
     public boolean executeContent(Fsm fsm, ExecutableContent content) {
         return content.execute(this, fsm);
@@ -89,15 +112,40 @@ public class RFsmExpressionDatamodel extends Datamodel {
     @Override
     public @NotNull Data execute(Data script) {
         try {
-            JsonScriptProducer scripter = new JsonScriptProducer();
-            script.as_script(scripter);
-            return ExpressionParser.execute(scripter.finish(), global());
+            return evaluate(script);
         } catch (Exception se) {
             com.bw.fsm.Log.error("%s", se.getMessage());
             return new Data.Error(String.format("Eval of '%s' failed: %s", script, se.getMessage()));
         }
     }
 
+    /**
+     * Gets the parsed expression of a script. Sources of the model are parsed once, calculated sources
+     * (without id) are parsed on each call.
+     */
+    protected Expression compile(Data script) throws ExpressionException {
+        if (script instanceof Data.Source source && source.source != null && source.source.source_id != 0) {
+            final Integer id = source.source.source_id;
+            if (compilations.get(id) instanceof Expression expression)
+                return expression;
+            Expression expression = ExpressionParser.parse(source.source.source);
+            compilations.put(id, expression);
+            return expression;
+        }
+        JsonScriptProducer scripter = new JsonScriptProducer();
+        script.as_script(scripter);
+        return ExpressionParser.parse(scripter.finish());
+    }
+
+    protected Data evaluate(Data script) throws ExpressionException {
+        if (StaticOptions.debug)
+            com.bw.fsm.Log.debug("execute: %s", script);
+        Data r = compile(script).execute(global(), false);
+        if (StaticOptions.debug)
+            com.bw.fsm.Log.debug("result: %s", r);
+        return r;
+    }
+
     @Override
     public ScriptProducer createScriptProducer() {
         return null;
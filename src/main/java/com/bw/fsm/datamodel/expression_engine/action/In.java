@@ -16,4 +16,9 @@ public class In implements Action {
     public Data execute(List<Data> arguments, GlobalData global) throws Exception {
         return null;
     }
+
+    @Override
+    public boolean is_side_effect_free() {
+        return true;
+    }
 }
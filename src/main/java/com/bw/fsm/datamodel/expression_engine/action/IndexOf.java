@@ -28,4 +28,9 @@ public class IndexOf implements Action {
             throw new ExpressionException("Wrong number of arguments for 'indexOf'.");
         }
     }
+
+    @Override
+    public boolean is_side_effect_free() {
+        return true;
+    }
 }
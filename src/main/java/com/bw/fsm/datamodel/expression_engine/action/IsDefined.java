@@ -13,4 +13,8 @@ public class IsDefined implements Action {
         return null;
     }
 
+    @Override
+    public boolean is_side_effect_free() {
+        return true;
+    }
 }
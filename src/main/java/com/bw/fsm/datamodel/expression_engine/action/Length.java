@@ -24,4 +24,9 @@ public class Length implements Action {
             throw new ExpressionException("Wrong number of arguments for 'length'.");
         }
     }
+
+    @Override
+    public boolean is_side_effect_free() {
+        return true;
+    }
 }
@@ -13,4 +13,8 @@ public class ToString implements Action {
         return null;
     }
 
+    @Override
+    public boolean is_side_effect_free() {
+        return true;
+    }
 }
@@ -67,6 +67,14 @@ public class NullDatamodel extends Datamodel {
     public void add_functions(Fsm fsm) {
     }
 
+    /**
+     * Conditions can only check the configuration, that is tracked by the FSM.
+     */
+    @Override
+    public long modification_epoch() {
+        return global().modification_epoch;
+    }
+
     @Override
     public boolean execute_condition(Data script) throws ExpressionException {
         var lexer = new ExpressionLexer(script.toString());
@@ -77,7 +85,7 @@ public class NullDatamodel extends Datamodel {
             Token<?> name_token = lexer.next_token();
             if (name_token instanceof Token.TString tstring) {
                 if (lexer.next_token() instanceof Token.Bracket bracket2 && bracket2.value == ')') {
-                    for (State s : global().configuration.data) {
+                    for (State s : global().configuration) {
                         if (s.name.equals(tstring.value))
                             return true;
                     }
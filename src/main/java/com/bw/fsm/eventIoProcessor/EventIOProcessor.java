@@ -35,6 +35,15 @@ public abstract class EventIOProcessor {
                 .put(global.session_id, global.externalQueue);
     }
 
+    /**
+     * Removes the queue of a terminated session.
+     */
+    public void remove_fsm(Integer session_id) {
+        var queues = this.get_external_queues();
+        if (queues.containsKey(session_id))
+            queues.remove(session_id);
+    }
+
     public abstract boolean send(@NotNull GlobalData global, @NotNull String target, @NotNull Event event);
 
     public abstract void shutdown();
@@ -44,7 +53,7 @@ public abstract class EventIOProcessor {
         for (var queue : queues.entrySet()) {
             if (StaticOptions.debug)
                 Log.debug("Send cancel to fsm #%s", queue.getKey());
-            queue.getValue().enqueue(cancel_event.get_copy());
+            queue.getValue().enqueue_urgent(cancel_event.get_copy());
         }
     }
 }
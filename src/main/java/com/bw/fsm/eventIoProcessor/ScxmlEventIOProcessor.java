@@ -4,9 +4,9 @@ import com.bw.fsm.*;
 import com.bw.fsm.datamodel.GlobalData;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of the SCXML I/O Event Processor.<br>
@@ -55,13 +55,18 @@ public class ScxmlEventIOProcessor extends EventIOProcessor {
     public static final String SCXML_TARGET_INVOKE_ID_PREFIX = "#_";
 
     public String location = SCXML_TARGET_SESSION_ID_PREFIX;
-    public Map<Integer, BlockingQueue<Event>> sessions = new HashMap<>();
+    public Map<Integer, BlockingQueue<Event>> sessions = new ConcurrentHashMap<>();
 
     public ScxmlEventIOProcessor() {
         if (StaticOptions.debug)
             Log.debug("Scxml Event Processor starting");
     }
 
+    /**
+     * Puts the event in the external queue of the target session and applies the {@link OverflowPolicy} of the queue.
+     * If the session doesn't exist or the event is rejected, "error.communication" is placed in the internal queue
+     * of the sending session.
+     */
     public boolean send_to_session(GlobalData gd, int toSessionId, Event event) {
         if (gd.executor == null) {
             Log.panic("Executor not available");
@@ -69,8 +74,15 @@ public class ScxmlEventIOProcessor extends EventIOProcessor {
         } else {
             if (StaticOptions.trace_event)
                 gd.tracer.event_external_sent(gd.session_id, toSessionId, event);
-            gd.executor.send_to_session(toSessionId, event);
-            return true;
+            // The done-event of an invoked session is never rejected by a full queue, the parent would wait forever.
+            if (gd.executor.send_to_session(toSessionId, event, !event.name.startsWith(Fsm.EVENT_DONE_INVOKE_PREFIX))) {
+                return true;
+            }
+            // W3C: If the sending SCXML session specifies a session that does not exist or is inaccessible,
+            //      the SCXML Processor must place the error "error.communication" on the internal event queue of the sending session.
+            // A full queue of the target session (see OverflowPolicy) is handled as "inaccessible".
+            gd.enqueue_internal(Event.error_communication(event));
+            return false;
         }
     }
 
@@ -30,9 +30,12 @@ public class Cancel implements ExecutableContent {
         } else
             send_id_data = null;
         if (send_id_data != null) {
-            var timer = datamodel.global().delayed_send.remove(send_id_data.toString());
-            if (timer != null)
-                timer.cancel();
+            // Cancels all pending sends with this id.
+            var delayed_sends = datamodel.global().delayed_send.remove(send_id_data.toString());
+            if (delayed_sends != null) {
+                for (var delayed_send : delayed_sends)
+                    delayed_send.cancel(datamodel.global());
+            }
         }
         return true;
     }
@@ -3,7 +3,6 @@ package com.bw.fsm.executableContent;
 import com.bw.fsm.*;
 import com.bw.fsm.Log;
 import com.bw.fsm.datamodel.Datamodel;
-import com.bw.fsm.datamodel.GlobalData;
 import com.bw.fsm.eventIoProcessor.EventIOProcessor;
 import com.bw.fsm.eventIoProcessor.ScxmlEventIOProcessor;
 import org.jetbrains.annotations.NotNull;
@@ -115,14 +114,14 @@ public class SendParameters implements ExecutableContent {
         if (delay_ms < 0) {
             // Delay is invalid -> Abort
             Log.error("Send: delay %s is negative", this.delay_expr);
-            datamodel.internal_error_execution_for_event(send_id, fsm.caller_invoke_id);
+            datamodel.internal_error_execution_for_event(send_id, datamodel.global().caller_invoke_id);
             return false;
         }
 
         if (delay_ms > 0 && ScxmlEventIOProcessor.SCXML_TARGET_INTERNAL.equals(target.toString())) {
             // Can't send via internal queue
             Log.error("Send: illegal delay for target %s", target);
-            datamodel.internal_error_execution_for_event(send_id, fsm.caller_invoke_id);
+            datamodel.internal_error_execution_for_event(send_id, datamodel.global().caller_invoke_id);
             return false;
         }
         Data type_result = datamodel.get_expression_alternative_value(this.type_value, this.type_expr);
@@ -132,7 +131,7 @@ public class SendParameters implements ExecutableContent {
             type_val = type_result;
         } else {
             Log.error("Failed to evaluate send type: %s", type_result);
-            datamodel.internal_error_execution_for_event(send_id, fsm.caller_invoke_id);
+            datamodel.internal_error_execution_for_event(send_id, datamodel.global().caller_invoke_id);
             return false;
         }
 
@@ -144,7 +143,7 @@ public class SendParameters implements ExecutableContent {
         event.sendid = send_id;
         event.origin = null;
         event.origin_type = null;
-        event.invoke_id = fsm.caller_invoke_id;
+        event.invoke_id = datamodel.global().caller_invoke_id;
         event.param_values = data_vec.isEmpty() ? null : data_vec;
         event.content = content;
 
@@ -154,18 +153,8 @@ public class SendParameters implements ExecutableContent {
             if (iop != null) {
                 if (StaticOptions.debug)
                     Log.debug("schedule '%s' for %d", event, delay_ms);
-                GlobalData global = datamodel.global();
-                var tg = fsm.schedule(delay_ms, () -> {
-                    if (send_id != null) {
-                        global.delayed_send.remove(send_id);
-                    }
-                    iop.send(global, target.toString(), event);
-                });
-                if (tg != null) {
-                    if (send_id != null) {
-                        global.delayed_send.put(send_id, tg);
-                    }
-                }
+                new DelayedSend(send_id, type_val_string, target.toString(), event,
+                        System.currentTimeMillis() + delay_ms).schedule(datamodel.global());
                 result = true;
             } else {
                 Log.error("Unknown io-processor %s", type_val);
@@ -174,7 +163,7 @@ public class SendParameters implements ExecutableContent {
             if (!result) {
                 // W3C:  If the SCXML Processor does not support the type that is specified,
                 // it must place the event error.execution on the internal event queue.
-                datamodel.internal_error_execution_for_event(send_id, fsm.caller_invoke_id);
+                datamodel.internal_error_execution_for_event(send_id, datamodel.global().caller_invoke_id);
             }
 
         } else {
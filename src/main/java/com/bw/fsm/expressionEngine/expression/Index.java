@@ -110,7 +110,7 @@ public class Index implements Expression {
             default ->
                     throw new ExpressionException(String.format("Internal Error. Unexpected Data type %s in index expression", left_result.type));
         }
-
+        context.modified();
     }
 
     @Override
@@ -20,6 +20,7 @@ public class Variable implements Expression {
         if (value == null) {
             if (allow_undefined) {
                 context.data.put(this.name, Data.None.NONE);
+                context.modified();
                 if (StaticOptions.debug)
                     Log.debug("Variable %s => NONE", name);
                 return Data.None.NONE;
@@ -42,6 +43,7 @@ public class Variable implements Expression {
         if (StaticOptions.debug)
             Log.debug("Variable %s <= %s", name, data);
         context.data.put(this.name, data);
+        context.modified();
     }
 
     @Override
@@ -9,6 +9,11 @@ public interface DefaultProtocolDefinitions {
      */
     String FSM_SERIALIZER_VERSION = "fsmW2.0";
 
+    /**
+     * The version of session snapshots, see {@link com.bw.fsm.SessionSnapshot}.
+     */
+    String SESSION_SNAPSHOT_VERSION = "fsmS1.2";
+
     String FSM_PROTOCOL_TYPE_PROTOCOL_VERSION = "DwP1.1";
     int FSM_PROTOCOL_TYPE_OPT_STRING_NONE = 0x10;
     int FSM_PROTOCOL_TYPE_BOOLEAN_TRUE = 0x1F;
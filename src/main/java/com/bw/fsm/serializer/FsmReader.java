@@ -67,6 +67,7 @@ public class FsmReader implements DefaultProtocolDefinitions {
             }
             fsm.pseudo_root = read_or_create_state_by_docId();
             fsm.script = read_executable_content_id();
+            fsm.prepare_model();
 
             long end = System.currentTimeMillis();
             Log.info("'%s' (RFSM) loaded in %dms", fsm.name, end - start);
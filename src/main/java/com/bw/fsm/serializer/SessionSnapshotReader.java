@@ -0,0 +1,109 @@
+package com.bw.fsm.serializer;
+
+import com.bw.fsm.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads snapshots of sessions, written by {@link SessionSnapshotWriter}.
+ */
+public class SessionSnapshotReader implements DefaultProtocolDefinitions {
+
+    protected @NotNull ProtocolReader reader;
+
+    public SessionSnapshotReader(@NotNull ProtocolReader reader) {
+        this.reader = reader;
+    }
+
+    public boolean has_error() {
+        return reader.has_error();
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @return The snapshot or null if the version doesn't match.
+     */
+    public SessionSnapshot read() throws IOException {
+        String version = reader.read_string();
+        if (!SESSION_SNAPSHOT_VERSION.equals(version)) {
+            Log.error("Wrong snapshot version '%s'", version);
+            return null;
+        }
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.model = reader.read_option_string();
+        snapshot.model_id = reader.read_option_string();
+        snapshot.session_id = (int) reader.read_long();
+        snapshot.parent_session_id = read_option_int();
+        snapshot.caller_invoke_id = reader.read_option_string();
+
+        snapshot.configuration.addAll(read_string_list());
+        snapshot.initialized.addAll(read_string_list());
+        for (int i = 0, n = (int) reader.read_long(); i < n; ++i) {
+            String history_state = reader.read_string();
+            snapshot.history.put(history_state, read_string_list());
+        }
+        snapshot.variables = read_data_map();
+
+        for (int i = 0, n = (int) reader.read_long(); i < n; ++i) {
+            String send_id = reader.read_option_string();
+            String type = reader.read_string();
+            String target = reader.read_string();
+            long due_ms = reader.read_long();
+            snapshot.delayed_sends.add(new DelayedSend(send_id, type, target, read_event(), due_ms));
+        }
+        return reader.has_error() ? null : snapshot;
+    }
+
+    /**
+     * Reads an event, written by {@link SessionSnapshotWriter#write_event(Event)}.
+     */
+    public Event read_event() throws IOException {
+        Event event = new Event();
+        event.name = reader.read_string();
+        event.etype = EventType.values()[(int) reader.read_long()];
+        event.sendid = reader.read_option_string();
+        event.origin = reader.read_option_string();
+        event.origin_type = reader.read_option_string();
+        event.invoke_id = reader.read_option_string();
+        if (reader.read_boolean()) {
+            final int n = (int) reader.read_long();
+            event.param_values = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i) {
+                String name = reader.read_string();
+                event.param_values.add(new ParamPair(name, reader.read_data()));
+            }
+        }
+        if (reader.read_boolean()) {
+            event.content = reader.read_data();
+        }
+        return event;
+    }
+
+    protected Integer read_option_int() throws IOException {
+        return reader.read_boolean() ? (int) reader.read_long() : null;
+    }
+
+    protected java.util.List<String> read_string_list() throws IOException {
+        final int n = (int) reader.read_long();
+        java.util.List<String> strings = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            strings.add(reader.read_string());
+        }
+        return strings;
+    }
+
+    protected Map<String, Data> read_data_map() throws IOException {
+        final int n = (int) reader.read_long();
+        Map<String, Data> map = new HashMap<>(n);
+        for (int i = 0; i < n; ++i) {
+            String key = reader.read_string();
+            map.put(key, reader.read_data());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,99 @@
+package com.bw.fsm.serializer;
+
+import com.bw.fsm.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes snapshots of sessions (see {@link SessionSnapshot}) in binary format.
+ */
+public class SessionSnapshotWriter implements DefaultProtocolDefinitions {
+
+    protected @NotNull ProtocolWriter writer;
+
+    public SessionSnapshotWriter(@NotNull ProtocolWriter writer) {
+        this.writer = writer;
+    }
+
+    public void write(SessionSnapshot snapshot) throws IOException {
+        writer.write_str(SESSION_SNAPSHOT_VERSION);
+        writer.write_option_string(snapshot.model);
+        writer.write_option_string(snapshot.model_id);
+        writer.write_long(snapshot.session_id);
+        write_option_int(snapshot.parent_session_id);
+        writer.write_option_string(snapshot.caller_invoke_id);
+
+        write_string_list(snapshot.configuration);
+        write_string_list(snapshot.initialized);
+        writer.write_long(snapshot.history.size());
+        for (var entry : snapshot.history.entrySet()) {
+            writer.write_str(entry.getKey());
+            write_string_list(entry.getValue());
+        }
+        write_data_map(snapshot.variables);
+
+        writer.write_long(snapshot.delayed_sends.size());
+        for (DelayedSend delayed_send : snapshot.delayed_sends) {
+            writer.write_option_string(delayed_send.send_id);
+            writer.write_str(delayed_send.type);
+            writer.write_str(delayed_send.target);
+            writer.write_long(delayed_send.due_ms);
+            write_event(delayed_send.event);
+        }
+    }
+
+    /**
+     * Writes an event, without {@link Event#delayed_action}.
+     */
+    public void write_event(Event event) throws IOException {
+        writer.write_str(event.name);
+        writer.write_long(event.etype.ordinal());
+        writer.write_option_string(event.sendid);
+        writer.write_option_string(event.origin);
+        writer.write_option_string(event.origin_type);
+        writer.write_option_string(event.invoke_id);
+        if (event.param_values == null) {
+            writer.write_boolean(false);
+        } else {
+            writer.write_boolean(true);
+            writer.write_long(event.param_values.size());
+            for (ParamPair pair : event.param_values) {
+                writer.write_str(pair.name);
+                writer.write_data(pair.value);
+            }
+        }
+        if (event.content == null) {
+            writer.write_boolean(false);
+        } else {
+            writer.write_boolean(true);
+            writer.write_data(event.content);
+        }
+    }
+
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    protected void write_option_int(Integer value) throws IOException {
+        writer.write_boolean(value != null);
+        if (value != null)
+            writer.write_long(value);
+    }
+
+    protected void write_string_list(java.util.List<String> strings) throws IOException {
+        writer.write_long(strings.size());
+        for (String s : strings) {
+            writer.write_str(s);
+        }
+    }
+
+    protected void write_data_map(Map<String, Data> value) throws IOException {
+        writer.write_long(value.size());
+        for (var entry : value.entrySet()) {
+            writer.write_str(entry.getKey());
+            writer.write_data(entry.getValue());
+        }
+    }
+}
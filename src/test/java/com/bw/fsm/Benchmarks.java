@@ -0,0 +1,98 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.stream.IntStream;
+
+/**
+ * Throughput measurements that are not part of the unit tests, as the results depend on the machine.<br>
+ * Started by the gradle task "benchmark".
+ */
+public class Benchmarks {
+
+    public static void usage(PrintStream os) {
+        os.println(
+                """
+                        
+                        Benchmarks - throughput of the event queue and of session starts.
+                        
+                        Usage:
+                          java com.bw.fsm.Benchmarks [queue] [spawn] [-help]
+                          Without arguments all benchmarks are executed.
+                        
+                            queue   Compares MpscQueue with LinkedBlockingDeque at 1, 4 and 16 producers.
+                        
+                            spawn   Compares FsmExecutor.spawn with a loop of FsmExecutor.execute_with_data_from_xml.
+                        """);
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> selected = List.of(args);
+        if (selected.contains("-help")) {
+            usage(System.out);
+            return;
+        }
+        if (selected.isEmpty() || selected.contains("queue"))
+            queue();
+        if (selected.isEmpty() || selected.contains("spawn"))
+            spawn();
+    }
+
+    static void queue() throws InterruptedException {
+        final int events = MpscQueueTest.EVENTS;
+        for (int producers : new int[]{1, 4, 16}) {
+            MpscQueue<Integer> mpsc = new MpscQueue<>();
+            LinkedBlockingDeque<Integer> deque = new LinkedBlockingDeque<>();
+            // Warm up
+            MpscQueueTest.run(producers, events / 4, mpsc::offer, mpsc::take);
+            MpscQueueTest.run(producers, events / 4, deque::addLast, deque::takeFirst);
+
+            double mpscRate = MpscQueueTest.run(producers, events, mpsc::offer, mpsc::take);
+            double dequeRate = MpscQueueTest.run(producers, events, deque::addLast, deque::takeFirst);
+            System.out.printf("%2d producers: MpscQueue %.1f M/s, LinkedBlockingDeque %.1f M/s%n",
+                    producers, mpscRate / 1e6, dequeRate / 1e6);
+        }
+    }
+
+    static void spawn() throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        executor.set_execution_mode(ExecutionMode.VIRTUAL_THREAD);
+        ActionWrapper actions = new ActionWrapper();
+        final int sessions = SpawnTest.SESSIONS;
+
+        Path log = Files.createTempFile("spawn", ".log");
+        Log.setLogFile(log, false);
+        try {
+            long start = System.nanoTime();
+            List<ScxmlSession> looped = new ArrayList<>(sessions);
+            for (int i = 0; i < sessions; ++i) {
+                looped.add(executor.execute_with_data_from_xml(SpawnTest.SCXML, actions.copy(), SpawnTest.device(i),
+                        null, "", TraceMode.NONE));
+            }
+            SpawnTest.join_all(looped);
+            double loopRate = sessions * 1e9 / (System.nanoTime() - start);
+
+            start = System.nanoTime();
+            Fsm model = new ScxmlReader().parse_from_xml(SpawnTest.SCXML);
+            List<ScxmlSession> spawned = executor.spawn(model,
+                    IntStream.range(0, sessions).mapToObj(SpawnTest::device), actions, TraceMode.NONE).get();
+            SpawnTest.join_all(spawned);
+            double spawnRate = sessions * 1e9 / (System.nanoTime() - start);
+
+            System.out.printf("Sessions per second: loop %.0f, spawn %.0f%n", loopRate, spawnRate);
+        } finally {
+            Log.releaseStream();
+            executor.shutdown();
+            Files.deleteIfExists(log);
+        }
+    }
+}
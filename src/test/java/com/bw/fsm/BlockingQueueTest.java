@@ -0,0 +1,114 @@
+package com.bw.fsm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BlockingQueueTest {
+
+    static BlockingQueue<Integer> full_queue(OverflowPolicy policy, long block_timeout_ms) {
+        BlockingQueue<Integer> queue = new BlockingQueue<>();
+        queue.set_capacity(3, policy, block_timeout_ms);
+        for (int i = 1; i <= 3; ++i) {
+            Assertions.assertTrue(queue.offer(i));
+        }
+        return queue;
+    }
+
+    @Test
+    void fail() {
+        BlockingQueue<Integer> queue = full_queue(OverflowPolicy.FAIL, 0);
+        Assertions.assertFalse(queue.offer(4));
+        Assertions.assertEquals(3, queue.size());
+        Assertions.assertEquals(1, queue.get_rejected_count());
+        Assertions.assertEquals(3, queue.get_max_depth());
+
+        // The platform itself is not bounded.
+        queue.enqueue(5);
+        Assertions.assertEquals(4, queue.size());
+    }
+
+    @Test
+    void drop_oldest() {
+        BlockingQueue<Integer> queue = full_queue(OverflowPolicy.DROP_OLDEST, 0);
+        Assertions.assertTrue(queue.offer(4));
+        Assertions.assertEquals(1, queue.get_dropped_count());
+        Assertions.assertEquals(2, queue.poll());
+        Assertions.assertEquals(3, queue.poll());
+        Assertions.assertEquals(4, queue.poll());
+    }
+
+    @Test
+    void drop_oldest_keeps_platform_events() {
+        BlockingQueue<Integer> queue = new BlockingQueue<>();
+        queue.set_capacity(2, OverflowPolicy.DROP_OLDEST, 0);
+        // A platform event, e.g. "done.invoke", is not counted.
+        queue.enqueue(100);
+        Assertions.assertTrue(queue.offer(1));
+        Assertions.assertTrue(queue.offer(2));
+        Assertions.assertEquals(0, queue.get_dropped_count());
+
+        // The oldest offered event is dropped, not the platform event in front of it.
+        Assertions.assertTrue(queue.offer(3));
+        queue.enqueue(101);
+        Assertions.assertEquals(1, queue.get_dropped_count());
+        Assertions.assertEquals(4, queue.size());
+        Assertions.assertEquals(100, queue.poll());
+        Assertions.assertEquals(2, queue.poll());
+        Assertions.assertEquals(3, queue.poll());
+        Assertions.assertEquals(101, queue.poll());
+        Assertions.assertNull(queue.poll());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void drop_newest() {
+        BlockingQueue<Integer> queue = full_queue(OverflowPolicy.DROP_NEWEST, 0);
+        Assertions.assertTrue(queue.offer(4));
+        Assertions.assertEquals(1, queue.get_dropped_count());
+        Assertions.assertEquals(1, queue.poll());
+        Assertions.assertEquals(2, queue.poll());
+        Assertions.assertEquals(3, queue.poll());
+        Assertions.assertNull(queue.poll());
+    }
+
+    @Test
+    void urgent_lane() throws InterruptedException {
+        BlockingQueue<Integer> queue = full_queue(OverflowPolicy.FAIL, 0);
+        queue.enqueue_urgent(10);
+        Assertions.assertEquals(4, queue.size());
+        Assertions.assertEquals(10, queue.dequeue());
+        Assertions.assertEquals(1, queue.dequeue());
+
+        // An urgent event wakes up a waiting consumer.
+        BlockingQueue<Integer> empty = new BlockingQueue<>();
+        Thread producer = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            empty.enqueue_urgent(20);
+        });
+        Assertions.assertEquals(20, empty.dequeue());
+        producer.join();
+        Assertions.assertTrue(empty.isEmpty());
+    }
+
+    @Test
+    void block() throws InterruptedException {
+        BlockingQueue<Integer> queue = full_queue(OverflowPolicy.BLOCK, 10000);
+        Thread consumer = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            queue.dequeue();
+        });
+        Assertions.assertTrue(queue.offer(4));
+        consumer.join();
+        Assertions.assertEquals(3, queue.size());
+
+        queue.set_capacity(3, OverflowPolicy.BLOCK, 10);
+        Assertions.assertFalse(queue.offer(5));
+        Assertions.assertEquals(1, queue.get_rejected_count());
+    }
+}
@@ -0,0 +1,34 @@
+package com.bw.fsm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bound and the eviction order of {@link ClockCache}.
+ */
+class ClockCacheTest {
+
+    @Test
+    void keeps_referenced_entries() {
+        ClockCache<Integer, String> cache = new ClockCache<>(4);
+        cache.put(-1, "hot");
+        for (int i = 0; i < 100; ++i) {
+            Assertions.assertEquals("hot", cache.get(-1));
+            cache.put(i, "cold");
+            Assertions.assertTrue(cache.size() <= 4);
+        }
+        Assertions.assertEquals("hot", cache.get(-1));
+        Assertions.assertNull(cache.get(0));
+        Assertions.assertEquals(101, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void disabled() {
+        ClockCache<Integer, String> cache = new ClockCache<>(0);
+        cache.put(1, "a");
+        Assertions.assertFalse(cache.enabled());
+        Assertions.assertNull(cache.get(1));
+        Assertions.assertEquals(0, cache.size());
+    }
+}
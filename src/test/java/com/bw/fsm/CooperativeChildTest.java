@@ -0,0 +1,98 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.datamodel.null_datamodel.NullDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs invoked children on the thread of the parent. Parent and child exchange events, the last child is
+ * cancelled by the parent.
+ */
+class CooperativeChildTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="s0" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="count" expr="0"/>
+                </datamodel>
+                <state id="s0">
+                    <invoke id="child">
+                        <content>
+                            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="c0" version="1.0" datamodel="ecmascript">
+                                <state id="c0">
+                                    <onentry>
+                                        <send event="ping" target="#_parent"/>
+                                    </onentry>
+                                    <transition event="pong" target="cf"/>
+                                </state>
+                                <final id="cf"/>
+                            </scxml>
+                        </content>
+                    </invoke>
+                    <transition event="ping">
+                        <send event="pong" target="#_child"/>
+                    </transition>
+                    <transition event="done.invoke" cond="count &lt; 2" target="s0">
+                        <assign location="count" expr="count + 1"/>
+                    </transition>
+                    <transition event="done.invoke" target="wait"/>
+                </state>
+                <state id="wait">
+                    <onentry>
+                        <send event="stop" delay="50ms"/>
+                    </onentry>
+                    <invoke id="sleeper">
+                        <content>
+                            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="w" version="1.0" datamodel="null">
+                                <state id="w"/>
+                            </scxml>
+                        </content>
+                    </invoke>
+                    <transition event="stop" target="end"/>
+                </state>
+                <final id="end"/>
+            </scxml>""";
+
+    @Test
+    void children_on_parent_thread(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        NullDatamodel.register();
+        final AtomicInteger threads = new AtomicInteger();
+        FsmExecutor executor = new FsmExecutor(false) {
+            @Override
+            public Thread create_session_thread(Runnable runnable, String name) {
+                threads.incrementAndGet();
+                return super.create_session_thread(runnable, name);
+            }
+        };
+        executor.state.cooperative_children = true;
+        Fsm model = new ScxmlReader().parse_from_xml(SCXML);
+
+        Log.setLogFile(tempDir.resolve("cooperative.log"), false);
+        try {
+            ScxmlSession session = model.start_fsm_with_data(new ActionWrapper(), executor, List.of(), TraceMode.NONE);
+            Assertions.assertTrue(session.join(10000), "Session not finished in time");
+            Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+            Assertions.assertEquals(1, threads.get());
+
+            // The cancelled child terminates after its parent.
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!executor.state.sessions.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(executor.state.sessions.isEmpty(), "Child not terminated");
+        } finally {
+            Log.releaseStream();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Rebuilds a session from a copy of its journal, as after a crash of the process.
+ */
+class EventJournalTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" name="counter" initial="run" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="count" expr="0"/>
+                </datamodel>
+                <state id="run">
+                    <transition event="inc">
+                        <assign location="count" expr="count + _event.data.step"/>
+                    </transition>
+                    <transition event="done" cond="count == 10" target="end"/>
+                    <transition event="done" target="fail"/>
+                </state>
+                <final id="end"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    @Test
+    void recover_from_checkpoint_and_events(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        Log.setLogFile(tempDir.resolve("journal.log"), false);
+        try {
+            EventJournal journal = new EventJournal(tempDir.resolve("journal"), 1, 3);
+            FsmExecutor executor = new FsmExecutor(false);
+            executor.set_journal(journal);
+
+            ScxmlSession session = executor.execute_with_data_from_xml(SCXML, new ActionWrapper(), List.of(), null, "", TraceMode.NONE);
+            for (int step = 1; step <= 4; ++step) {
+                executor.send_to_session(session.session_id, inc(step));
+            }
+            // 3 events are in the checkpoint, the last one follows it.
+            EventJournal.Recovery recovery = null;
+            long end = System.currentTimeMillis() + 10000;
+            while (recovery == null || recovery.events.size() != 1
+                    || !new Data.Integer(6).equals(recovery.checkpoint.variables.get("count"))) {
+                Assertions.assertTrue(System.currentTimeMillis() < end, "Journal not written in time");
+                Thread.sleep(5);
+                recovery = journal.read(session.session_id);
+            }
+            journal.sync();
+
+            // "Crash": keep a copy of the journal, the session removes its file on termination.
+            Path crashed = tempDir.resolve("crashed");
+            Files.createDirectories(crashed);
+            Files.copy(journal.get_path(session.session_id), crashed.resolve(journal.get_path(session.session_id).getFileName()));
+            session.cancel();
+            Assertions.assertTrue(session.join(5000));
+            Assertions.assertFalse(Files.exists(journal.get_path(session.session_id)));
+            journal.close();
+
+            EventJournal recovered_journal = new EventJournal(crashed);
+            FsmExecutor recovered_executor = new FsmExecutor(false);
+            recovered_executor.set_journal(recovered_journal);
+            // A different model with the same name doesn't take over the session.
+            Fsm other = new ScxmlReader().parse_from_xml(SCXML.replace("\"fail\"", "\"failed\""));
+            Assertions.assertTrue(recovered_executor.recover(other, new ActionWrapper(), TraceMode.NONE).isEmpty());
+            List<ScxmlSession> sessions = recovered_executor.recover(new ScxmlReader().parse_from_xml(SCXML), new ActionWrapper(), TraceMode.NONE);
+            Assertions.assertEquals(1, sessions.size());
+            ScxmlSession recovered = sessions.get(0);
+            Assertions.assertEquals(session.session_id, recovered.session_id);
+
+            recovered_executor.send_to_session(recovered.session_id, Event.new_simple("done"));
+            Assertions.assertTrue(recovered.join(10000), "Session not finished in time");
+            Assertions.assertEquals(List.of("end"), recovered.global_data.final_configuration);
+            Assertions.assertFalse(Files.exists(recovered_journal.get_path(recovered.session_id)));
+            recovered_journal.close();
+        } finally {
+            Log.releaseStream();
+        }
+    }
+
+    static final String INVOKING_SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" name="invoking" initial="run" version="1.0" datamodel="ecmascript">
+                <state id="run">
+                    <invoke type="scxml">
+                        <content>
+                            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="child" version="1.0" datamodel="ecmascript">
+                                <state id="child">
+                                    <onentry><send event="finish" delay="500ms"/></onentry>
+                                    <transition event="finish" target="child_end"/>
+                                </state>
+                                <final id="child_end"/>
+                            </scxml>
+                        </content>
+                    </invoke>
+                    <transition event="done.invoke" target="end"/>
+                </state>
+                <final id="end"/>
+            </scxml>""";
+
+    /**
+     * The checkpoint is taken while the invoked session runs, the recovery has to invoke it again.
+     */
+    @Test
+    void recover_invoking_session(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        Log.setLogFile(tempDir.resolve("journal.log"), false);
+        try {
+            EventJournal journal = new EventJournal(tempDir.resolve("journal"), 1, 3);
+            FsmExecutor executor = new FsmExecutor(false);
+            executor.set_journal(journal);
+
+            ScxmlSession session = executor.execute_with_data_from_xml(INVOKING_SCXML, new ActionWrapper(), List.of(), null, "", TraceMode.NONE);
+            long end = System.currentTimeMillis() + 10000;
+            while (journal.read(session.session_id) == null) {
+                Assertions.assertTrue(System.currentTimeMillis() < end, "Journal not written in time");
+                Thread.sleep(5);
+            }
+            Path crashed = tempDir.resolve("crashed");
+            Files.createDirectories(crashed);
+            Files.copy(journal.get_path(session.session_id), crashed.resolve(journal.get_path(session.session_id).getFileName()));
+            session.cancel();
+            Assertions.assertTrue(session.join(5000));
+            journal.close();
+
+            EventJournal recovered_journal = new EventJournal(crashed);
+            FsmExecutor recovered_executor = new FsmExecutor(false);
+            recovered_executor.set_journal(recovered_journal);
+            List<ScxmlSession> sessions = recovered_executor.recover(new ScxmlReader().parse_from_xml(INVOKING_SCXML), new ActionWrapper(), TraceMode.NONE);
+            Assertions.assertEquals(1, sessions.size());
+            ScxmlSession recovered = sessions.get(0);
+            Assertions.assertTrue(recovered.join(10000), "Invoked session not started again");
+            Assertions.assertEquals(List.of("end"), recovered.global_data.final_configuration);
+            recovered_journal.close();
+        } finally {
+            Log.releaseStream();
+        }
+    }
+
+    static Event inc(int step) {
+        Event event = Event.new_simple("inc");
+        event.param_values = List.of(new ParamPair("step", new Data.Integer(step)));
+        return event;
+    }
+}
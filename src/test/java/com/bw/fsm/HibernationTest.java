@@ -0,0 +1,138 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Hibernates an idle session and revives it by events and by a delayed send.
+ */
+class HibernationTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="run" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="count" expr="0"/>
+                </datamodel>
+                <state id="run">
+                    <transition event="inc" cond="count == 1" target="wait">
+                        <assign location="count" expr="count + 1"/>
+                    </transition>
+                    <transition event="inc">
+                        <assign location="count" expr="count + 1"/>
+                    </transition>
+                </state>
+                <state id="wait">
+                    <onentry>
+                        <send event="tick" delay="1s"/>
+                    </onentry>
+                    <transition event="tick" cond="count == 2" target="end"/>
+                    <transition event="tick" target="fail"/>
+                </state>
+                <final id="end"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    @Test
+    void hibernate_and_revive(@TempDir Path tempDir) throws Exception {
+        run(tempDir, ExecutionMode.PLATFORM_THREAD);
+        run(tempDir, ExecutionMode.POOLED);
+    }
+
+    void run(Path tempDir, ExecutionMode mode) throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        executor.set_execution_mode(mode);
+        FileSessionStore store = new FileSessionStore(tempDir.resolve(mode.name()));
+        executor.set_hibernation(store, 50);
+
+        Log.setLogFile(tempDir.resolve("hibernate_" + mode.name() + ".log"), false);
+        try {
+            ScxmlSession session = executor.execute_with_data_from_xml(SCXML, new ActionWrapper(), List.of(), null, "", TraceMode.NONE);
+            await_hibernated(session);
+            Assertions.assertTrue(Files.exists(store.get_path(session.session_id)));
+
+            // Each event revives the session, the data survives.
+            executor.send_to_session(session.session_id, Event.new_simple("inc"));
+            await_hibernated(session);
+            executor.send_to_session(session.session_id, Event.new_simple("inc"));
+
+            // The pending delayed send is stored with the session and revives it.
+            await_hibernated(session);
+            Assertions.assertTrue(session.join(5000), "Session not finished in time");
+            Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+            Assertions.assertFalse(Files.exists(store.get_path(session.session_id)));
+        } finally {
+            Log.releaseStream();
+            executor.set_hibernation(null, 0);
+            executor.shutdown();
+        }
+    }
+
+    static final String CANCEL_SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="wait" version="1.0" datamodel="ecmascript">
+                <state id="wait">
+                    <onentry>
+                        <send id="t" event="tick" delay="2s"/>
+                    </onentry>
+                    <transition event="stop_timer">
+                        <cancel sendid="t"/>
+                    </transition>
+                    <transition event="tick" target="fail"/>
+                    <transition event="finish" target="end"/>
+                </state>
+                <final id="end"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    /**
+     * The wake-up for the delayed send is cancelled if an event revives the session before. Otherwise it would
+     * revive the session after the send was cancelled.
+     */
+    @Test
+    void no_wake_up_after_cancel(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        FileSessionStore store = new FileSessionStore(tempDir.resolve("cancel"));
+        executor.set_hibernation(store, 50);
+
+        Log.setLogFile(tempDir.resolve("hibernate_cancel.log"), false);
+        try {
+            ScxmlSession session = executor.execute_with_data_from_xml(CANCEL_SCXML, new ActionWrapper(), List.of(), null, "", TraceMode.NONE);
+            await_hibernated(session);
+            // The send is due at most 2s after the session has hibernated.
+            long due = System.currentTimeMillis() + 2000;
+            executor.send_to_session(session.session_id, Event.new_simple("stop_timer"));
+            await_hibernated(session);
+
+            while (System.currentTimeMillis() < due + 500) {
+                Assertions.assertTrue(session.is_hibernated(), "Session revived after the send was cancelled");
+                Thread.sleep(2);
+            }
+            executor.send_to_session(session.session_id, Event.new_simple("finish"));
+            Assertions.assertTrue(session.join(5000), "Session not finished in time");
+            Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+        } finally {
+            Log.releaseStream();
+            executor.set_hibernation(null, 0);
+            executor.shutdown();
+        }
+    }
+
+    static void await_hibernated(ScxmlSession session) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!session.is_hibernated()) {
+            Assertions.assertTrue(System.currentTimeMillis() < end, "Session not hibernated in time");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.bw.fsm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log lines and direct prints to the same {@link Log.LogPrintStream} from concurrent threads must not be mixed.
+ */
+class LogTest {
+
+    static final int THREADS = 8;
+    static final int LINES = 2000;
+
+    @Test
+    void lines_not_mixed(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("mixed.log");
+        Log.LogPrintStream stream = new Log.LogPrintStream(file, false);
+        String logLine = "A".repeat(200);
+        String printLine = "B".repeat(200);
+
+        List<Thread> threads = new ArrayList<>(THREADS);
+        for (int t = 0; t < THREADS; ++t) {
+            final boolean print = (t & 1) != 0;
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < LINES; ++i) {
+                    if (print) {
+                        stream.println(printLine);
+                    } else {
+                        try {
+                            stream.write_line(logLine + System.lineSeparator());
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        stream.close();
+        Assertions.assertFalse(stream.checkError());
+
+        List<String> lines = Files.readAllLines(file);
+        Assertions.assertEquals(THREADS * LINES, lines.size());
+        for (String line : lines) {
+            Assertions.assertTrue(line.equals(logLine) || line.equals(printLine), line);
+        }
+    }
+}
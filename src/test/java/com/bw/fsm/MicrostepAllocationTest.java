@@ -0,0 +1,102 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.null_datamodel.NullDatamodel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that a steady-state event doesn't allocate heap memory inside the FSM thread.<br>
+ * Debug and trace output allocate for each event, so the limit is only checked by the test task of the
+ * minimal build (see minimalBuild/build.gradle). Other variants only report the allocation.
+ */
+class MicrostepAllocationTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="main" version="1.0" datamodel="null">
+                <parallel id="main">
+                    <transition event="stop" target="end"/>
+                    <state id="r1">
+                        <state id="a1"><transition event="ping" target="b1"/></state>
+                        <state id="b1"><transition event="ping" target="a1"/></state>
+                    </state>
+                    <state id="r2">
+                        <state id="a2"><transition event="ping" target="b2"/></state>
+                        <state id="b2"><transition event="ping" target="a2"/></state>
+                    </state>
+                    <state id="r3">
+                        <state id="a3"><transition event="pong.x" target="b3"/></state>
+                        <state id="b3"><transition event="*" target="a3"/></state>
+                    </state>
+                </parallel>
+                <final id="end"/>
+            </scxml>""";
+
+    /**
+     * Maximal average allocation per event. Not zero, as the blocking queue may allocate
+     * a node if the FSM thread needs to wait.
+     */
+    static final long MAX_BYTES_PER_EVENT = 64;
+
+    static final int WARMUP_EVENTS = 50000;
+    static final int EVENTS = 20000;
+
+    @SuppressWarnings("deprecation")
+    @Test
+    void allocation_per_event() throws IOException, InterruptedException {
+        NullDatamodel.register();
+
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean)
+                || !threadMXBean.isThreadAllocatedMemorySupported()) {
+            Assumptions.abort("Thread allocation measurement is not supported");
+            return;
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        Fsm fsm = new ScxmlReader().parse_from_xml(SCXML);
+        FsmExecutor executor = new FsmExecutor(false);
+        ScxmlSession session = fsm.start_fsm(new ActionWrapper(), executor);
+        try {
+            send_events(session, WARMUP_EVENTS);
+            wait_for_idle(session);
+
+            long start = threadMXBean.getThreadAllocatedBytes(session.thread.getId());
+            send_events(session, EVENTS);
+            wait_for_idle(session);
+            long bytesPerEvent = (threadMXBean.getThreadAllocatedBytes(session.thread.getId()) - start) / EVENTS;
+
+            System.out.printf("Allocated %d bytes per event (%s)%n", bytesPerEvent, fsm.plan_cache);
+
+            Assumptions.assumeFalse(StaticOptions.debug || StaticOptions.trace,
+                    "Debug and trace output allocates memory for each event, checked by the minimal build.");
+            Assertions.assertTrue(bytesPerEvent <= MAX_BYTES_PER_EVENT,
+                    String.format("%d bytes allocated per event", bytesPerEvent));
+        } finally {
+            // If "b3" is active, the first "stop" is consumed by its wildcard transition (which preempts the
+            // transition of "main").
+            session.sender.enqueue(Event.new_simple("stop"));
+            session.sender.enqueue(Event.new_simple("stop"));
+            session.thread.join(2000);
+        }
+        Assertions.assertTrue(session.global_data.final_configuration.contains("end"));
+    }
+
+    static void send_events(ScxmlSession session, int count) {
+        for (int i = 0; i < count; ++i) {
+            session.sender.enqueue(Event.new_simple((i & 1) == 0 ? "ping" : "pong.x.y"));
+        }
+    }
+
+    static void wait_for_idle(ScxmlSession session) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!(session.sender.data.isEmpty() && session.thread.getState() == Thread.State.WAITING)) {
+            Assertions.assertTrue(System.currentTimeMillis() < timeout, "FSM is not idle in time");
+            Thread.sleep(1);
+        }
+    }
+}
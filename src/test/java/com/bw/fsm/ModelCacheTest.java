@@ -0,0 +1,110 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.datamodel.null_datamodel.NullDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Executes the same file or inline document repeatedly, the document shall be parsed only once until it is modified.
+ */
+class ModelCacheTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="s0" version="1.0" datamodel="null">
+                <state id="s0">
+                    <transition target="%s"/>
+                </state>
+                <final id="end"/>
+                <final id="end2"/>
+            </scxml>""";
+
+    static void run(FsmExecutor executor, String url, String expected) throws InterruptedException {
+        ScxmlSession session = executor.execute(url, new ActionWrapper(), TraceMode.NONE);
+        Assertions.assertTrue(session.join(10000), "Session not finished in time");
+        Assertions.assertEquals(List.of(expected), session.global_data.final_configuration);
+    }
+
+    @Test
+    void parse_once_until_modified(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("model.scxml");
+        Files.writeString(file, String.format(SCXML, "end"));
+        NullDatamodel.register();
+        String url = file.toUri().toString();
+
+        FsmExecutor executor = new FsmExecutor(false);
+        ModelCache cache = executor.get_model_cache();
+
+        Log.setLogFile(tempDir.resolve("cache.log"), false);
+        try {
+            run(executor, url, "end");
+            run(executor, url, "end");
+            Assertions.assertEquals(1, cache.getMisses());
+            Assertions.assertEquals(1, cache.getHits());
+
+            // Different size, so the change is detected even if the modification time doesn't change.
+            Files.writeString(file, String.format(SCXML, "end2"));
+            run(executor, url, "end2");
+            Assertions.assertEquals(1, cache.getInvalidations());
+            Assertions.assertEquals(2, cache.getMisses());
+
+            Path other = tempDir.resolve("other.scxml");
+            Files.writeString(other, String.format(SCXML, "end"));
+            cache.setCapacity(1);
+            run(executor, other.toUri().toString(), "end");
+            run(executor, url, "end2");
+            Assertions.assertEquals(2, cache.getEvictions());
+            Assertions.assertEquals(1, cache.size());
+        } finally {
+            Log.releaseStream();
+            executor.shutdown();
+        }
+    }
+
+    static final String INLINE_SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="s0" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="doc" expr="'&lt;scxml xmlns=&quot;http://www.w3.org/2005/07/scxml&quot; version=&quot;1.0&quot;&gt;&lt;final id=&quot;f&quot;/&gt;&lt;/scxml&gt;'"/>
+                    <data id="count" expr="0"/>
+                </datamodel>
+                <state id="s0">
+                    <invoke>
+                        <content expr="doc"/>
+                    </invoke>
+                    <transition event="done.invoke" cond="count &lt; 2" target="s0">
+                        <assign location="count" expr="count + 1"/>
+                    </transition>
+                    <transition event="done.invoke" target="end"/>
+                </state>
+                <final id="end"/>
+            </scxml>""";
+
+    @Test
+    void parse_inline_content_once(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        NullDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        Fsm model = new ScxmlReader().parse_from_xml(INLINE_SCXML);
+
+        Log.setLogFile(tempDir.resolve("inline.log"), false);
+        try {
+            ScxmlSession session = model.start_fsm_with_data(new ActionWrapper(), executor, List.of(), TraceMode.NONE);
+            Assertions.assertTrue(session.join(10000), "Session not finished in time");
+            Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+            Assertions.assertEquals(1, model.inline_models.getMisses());
+            Assertions.assertEquals(2, model.inline_models.getHits());
+        } finally {
+            Log.releaseStream();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.bw.fsm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Checks the order and wake-up of {@link MpscQueue}. The throughput is compared with the former
+ * LinkedBlockingDeque by {@link Benchmarks}.
+ */
+class MpscQueueTest {
+
+    static final int EVENTS = 400000;
+
+    interface Taker {
+        Integer take() throws InterruptedException;
+    }
+
+    @Test
+    void order_per_producer() throws InterruptedException {
+        for (int producers : new int[]{1, 4, 16}) {
+            MpscQueue<Integer> queue = new MpscQueue<>();
+            run(producers, EVENTS, queue::offer, queue::take);
+            Assertions.assertTrue(queue.isEmpty());
+            Assertions.assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    void marks() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        queue.offer(1, true);
+        queue.offer(2);
+        Assertions.assertEquals(1, queue.poll());
+        Assertions.assertTrue(queue.last_marked());
+        Assertions.assertEquals(2, queue.poll());
+        Assertions.assertFalse(queue.last_marked());
+    }
+
+    @Test
+    void interrupt() throws InterruptedException {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        AtomicReference<Throwable> result = new AtomicReference<>();
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            try {
+                queue.take();
+            } catch (Throwable t) {
+                result.set(t);
+            }
+        });
+        Thread.sleep(50);
+        consumer.interrupt();
+        consumer.join(2000);
+        Assertions.assertInstanceOf(InterruptedException.class, result.get());
+    }
+
+    /**
+     * Sends the events by the producers, checks the order per producer in the consumer.
+     *
+     * @return Events per second.
+     */
+    static double run(int producers, int events, Consumer<Integer> offer, Taker taker) throws InterruptedException {
+        final int perProducer = events / producers;
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            final int base = p * perProducer;
+            threads.add(Thread.ofPlatform().unstarted(() -> {
+                for (int i = 0; i < perProducer; ++i)
+                    offer.accept(base + i);
+            }));
+        }
+        final int[] last = new int[producers];
+        java.util.Arrays.fill(last, -1);
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (int i = 0, n = perProducer * producers; i < n; ++i) {
+            final int v = taker.take();
+            final int p = v / perProducer;
+            Assertions.assertTrue(v % perProducer > last[p], "Order of producer not kept");
+            last[p] = v % perProducer;
+        }
+        double rate = perProducer * producers * 1e9 / (System.nanoTime() - start);
+        for (Thread t : threads)
+            t.join();
+        return rate;
+    }
+}
@@ -0,0 +1,57 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Checks that an idle pooled session keeps the log stream it has taken over, after the starting thread has
+ * released the stream.
+ */
+class PooledSessionTaskTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="idle" version="1.0" datamodel="ecmascript">
+                <state id="idle">
+                    <transition event="stop" target="end">
+                        <log expr="'stopped by event'"/>
+                    </transition>
+                </state>
+                <final id="end"/>
+            </scxml>""";
+
+    @Test
+    void keeps_log_stream(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        executor.set_execution_mode(ExecutionMode.POOLED);
+        Fsm fsm = new ScxmlReader().parse_from_xml(SCXML);
+
+        Path logFile = tempDir.resolve("pooled.log");
+        Log.setLogFile(logFile, false);
+        ScxmlSession session;
+        try {
+            session = fsm.start_fsm(new ActionWrapper(), executor);
+        } finally {
+            Log.releaseStream();
+        }
+        executor.send_to_session(session.session_id, Event.new_simple("stop"));
+        Assertions.assertTrue(session.join(10000), "Session not finished in time");
+        Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+        executor.shutdown();
+
+        // The session closes the stream after it has terminated.
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!Files.readString(logFile).contains("stopped by event")) {
+            Assertions.assertTrue(System.currentTimeMillis() < timeout, "Log of the session is missing");
+            Thread.sleep(10);
+        }
+    }
+}
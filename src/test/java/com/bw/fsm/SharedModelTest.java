@@ -0,0 +1,63 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs concurrent sessions on one parsed model with late binding. Each session has to initialize the data of the
+ * entered states itself.
+ */
+class SharedModelTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="s0" version="1.0" datamodel="ecmascript" binding="late">
+                <state id="s0">
+                    <transition event="go" target="s1"/>
+                </state>
+                <state id="s1">
+                    <datamodel>
+                        <data id="v" expr="42"/>
+                    </datamodel>
+                    <transition cond="v === 42" target="end"/>
+                    <transition target="fail"/>
+                </state>
+                <final id="end"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    static final int SESSIONS = 20;
+
+    @Test
+    void late_binding_per_session(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        executor.set_execution_mode(ExecutionMode.VIRTUAL_THREAD);
+        Fsm model = new ScxmlReader().parse_from_xml(SCXML);
+
+        Log.setLogFile(tempDir.resolve("shared.log"), false);
+        try {
+            List<ScxmlSession> sessions = new ArrayList<>();
+            for (int i = 0; i < SESSIONS; ++i) {
+                sessions.add(model.start_fsm_with_data(new ActionWrapper(), executor, List.of(), TraceMode.NONE));
+            }
+            for (ScxmlSession session : sessions) {
+                executor.send_to_session(session.session_id, Event.new_simple("go"));
+            }
+            for (ScxmlSession session : sessions) {
+                Assertions.assertTrue(session.join(10000), "Session not finished in time");
+                Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+            }
+        } finally {
+            Log.releaseStream();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Starts sessions by {@link FsmExecutor#spawn}, each with its own data. The start rate is compared with a loop
+ * of {@link FsmExecutor#execute_with_data_from_xml} by {@link Benchmarks}.
+ */
+class SpawnTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="s0" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="device" expr="-1"/>
+                </datamodel>
+                <state id="s0">
+                    <transition cond="device >= 0 &amp;&amp; In('s0')" target="end"/>
+                    <transition target="fail"/>
+                </state>
+                <final id="end"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    static final int SESSIONS = 200;
+
+    @Test
+    void spawn(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        executor.set_execution_mode(ExecutionMode.VIRTUAL_THREAD);
+
+        Log.setLogFile(tempDir.resolve("spawn.log"), false);
+        try {
+            Fsm model = new ScxmlReader().parse_from_xml(SCXML);
+            List<ScxmlSession> spawned = executor.spawn(model,
+                    IntStream.range(0, SESSIONS).mapToObj(SpawnTest::device), new ActionWrapper(), TraceMode.NONE).get();
+            join_all(spawned);
+
+            Assertions.assertEquals(SESSIONS, spawned.size());
+            for (ScxmlSession session : spawned) {
+                Assertions.assertEquals(List.of("end"), session.global_data.final_configuration);
+            }
+            Assertions.assertTrue(executor.state.sessions.isEmpty());
+        } finally {
+            Log.releaseStream();
+        }
+    }
+
+    /**
+     * The bootstraps of an executor share one engine, that is closed by the shutdown of the executor.
+     */
+    @Test
+    void shares_engine() throws Exception {
+        ECMAScriptDatamodel.register();
+        FsmExecutor executor = new FsmExecutor(false);
+        Fsm model = new ScxmlReader().parse_from_xml(SCXML);
+        SessionBootstrap first = model.create_bootstrap(new ActionWrapper(), executor, TraceMode.NONE);
+        SessionBootstrap second = model.create_bootstrap(new ActionWrapper(), executor, TraceMode.NONE);
+        Engine engine = ((ECMAScriptDatamodel.ECMAScriptFunctions) first.shared_functions).engine;
+        Assertions.assertSame(engine, ((ECMAScriptDatamodel.ECMAScriptFunctions) second.shared_functions).engine);
+
+        executor.shutdown();
+        Assertions.assertThrows(IllegalStateException.class, () -> Context.newBuilder("js").engine(engine).build());
+    }
+
+    static List<ParamPair> device(int i) {
+        return List.of(new ParamPair("device", new Data.Integer(i)));
+    }
+
+    static void join_all(List<ScxmlSession> sessions) throws InterruptedException {
+        for (ScxmlSession session : sessions) {
+            Assertions.assertTrue(session.join(10000), "Session not finished in time");
+        }
+    }
+}
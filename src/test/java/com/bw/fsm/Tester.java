@@ -183,18 +183,15 @@ public class Tester {
             // Sending some event
             eventCb.accept(session.sender);
 
-            if (session.thread == null) {
-                Log.panic("Internal error: session_thread not available");
-            }
             test_running = true;
             do {
                 try {
                     Log.info("FSM started. Waiting to terminate...");
-                    session.thread.join();
+                    session.join();
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
-            } while (test_running && session.thread.isAlive());
+            } while (test_running && session.is_alive());
 
             Log.info("FSM '%s' terminated.", fsm.name);
 
@@ -204,9 +201,8 @@ public class Tester {
             }
 
             if (expected_final_configuration != null) {
-                ScxmlSession s = executor.state.sessions.get(session.session_id);
-                if (s == null) {
-                    Log.error("FSM Session lost");
+                if (executor.state.sessions.containsKey(session.session_id)) {
+                    Log.error("FSM Session not removed after termination");
                     return false;
                 } else {
                     if (verify_final_configuration(expected_final_configuration, session.global_data.final_configuration)) {
@@ -232,26 +228,23 @@ public class Tester {
         return true;
     }
 
-    static Timer watchdog = new Timer(true);
-
     public BlockingQueue<Event> start_watchdog(String test_name, int timeout) {
         BlockingQueue<Event> watchdog_queue = new BlockingQueue<>();
 
         final PrintStream ps = Log.getPrintStream();
 
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    if (watchdog_queue.data.isEmpty()) {
+        TimerWheel.shared().schedule(timeout, () -> {
+            if (watchdog_queue.data.isEmpty()) {
+                // abort_test waits for the session, don't block the timer.
+                Thread.startVirtualThread(() -> {
+                    try {
                         Log.setLogStream(ps);
                         abort_test(String.format("[%s] ==> FSM timed out after %d milliseconds", test_name, timeout));
+                    } catch (Exception ignored) {
                     }
-                } catch (Exception ignored) {
-                }
+                });
             }
-        };
-        watchdog.schedule(timerTask, timeout);
+        });
         return watchdog_queue;
     }
 
@@ -283,11 +276,11 @@ public class Tester {
         test_running = false;
         Log.error("Test aborted: %s", message);
         if (session != null) {
-            if (session.thread != null && session.thread.isAlive()) {
-                session.sender.enqueue(Event.new_simple(Fsm.EVENT_CANCEL_SESSION));
+            if (session.is_alive()) {
+                session.cancel();
                 do {
                     try {
-                        session.thread.join();
+                        session.join();
                     } catch (Exception ignored) {
                     }
                 } while (session.global_data.running);
@@ -0,0 +1,122 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class TimerWheelTest {
+
+    @Test
+    void expires_in_deadline_order() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test_timer", 5, 8);
+        try {
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(4);
+            // 80ms is more than one turn of the wheel (8 x 5ms), 31ms and 32ms are in the same bucket.
+            // All delays are relative to the same base, so the deadlines don't depend on scheduling delays.
+            // The base is in the future, so all timers are scheduled before the first one expires.
+            final long base = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            wheel.schedule(base, 80, () -> {
+                order.add(80);
+                done.countDown();
+            });
+            wheel.schedule(base, 32, () -> {
+                order.add(32);
+                done.countDown();
+            });
+            wheel.schedule(base, 31, () -> {
+                order.add(31);
+                done.countDown();
+            });
+            wheel.schedule(base, 0, () -> {
+                order.add(0);
+                done.countDown();
+            });
+            Assertions.assertTrue(done.await(2, TimeUnit.SECONDS));
+            Assertions.assertEquals(List.of(0, 31, 32, 80), order);
+            Assertions.assertEquals(0, wheel.get_pending_count());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    void cancel_many() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test_timer", 5, 512);
+        try {
+            final int count = 1000000;
+            List<FsmTimer> timers = new ArrayList<>(count);
+            Runnable fail = () -> Assertions.fail("Cancelled timer expired");
+            for (int i = 0; i < count; ++i) {
+                timers.add(wheel.schedule(60000 + i % 1000, fail));
+            }
+            Assertions.assertEquals(count, wheel.get_pending_count());
+            for (FsmTimer timer : timers) {
+                Assertions.assertTrue(timer.cancel());
+            }
+            Assertions.assertFalse(timers.get(0).cancel());
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while (wheel.get_pending_count() > 0) {
+                Assertions.assertTrue(System.currentTimeMillis() < timeout, "Cancelled timers not removed");
+                Thread.sleep(5);
+            }
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    static final String SAME_SENDID_SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="s" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="count" expr="0"/>
+                    <data id="cancelled" expr="%s"/>
+                </datamodel>
+                <state id="s">
+                    <onentry>
+                        <send event="tick" id="t" delay="50ms"/>
+                        <send event="tick" id="t" delay="100ms"/>
+                        <if cond="cancelled"><cancel sendid="t"/></if>
+                        <send event="timeout" delay="500ms"/>
+                    </onentry>
+                    <transition event="tick" cond="cancelled" target="fail"/>
+                    <transition event="tick" cond="count == 1" target="pass"/>
+                    <transition event="tick">
+                        <assign location="count" expr="count + 1"/>
+                    </transition>
+                    <transition event="timeout" cond="cancelled" target="pass"/>
+                    <transition event="timeout" target="fail"/>
+                </state>
+                <final id="pass"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    /**
+     * Delayed sends with the same id are all sent, a &lt;cancel> cancels all of them.
+     */
+    @Test
+    void delayed_sends_with_same_id(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        Log.setLogFile(tempDir.resolve("sendid.log"), false);
+        try {
+            for (String cancelled : List.of("false", "true")) {
+                Fsm fsm = new ScxmlReader().parse_from_xml(String.format(SAME_SENDID_SCXML, cancelled));
+                ScxmlSession session = fsm.start_fsm(new ActionWrapper(), new FsmExecutor(false));
+                Assertions.assertTrue(session.join(5000), "Session not finished in time");
+                Assertions.assertEquals(List.of("pass"), session.global_data.final_configuration, "cancelled=" + cancelled);
+            }
+        } finally {
+            Log.releaseStream();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.ecma.ECMAScriptDatamodel;
+import com.bw.fsm.tracer.TraceMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the same events with and without {@link TransitionSelectionCache}. The selections in "q" depend on a
+ * condition and on the history of "p", so they must not be taken from the cache. The model checks the entered
+ * states itself and ends in "done" only if all selections were correct.
+ */
+class TransitionSelectionCacheTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="p" version="1.0" datamodel="ecmascript">
+                <datamodel>
+                    <data id="count" expr="0"/>
+                    <data id="path" expr="''"/>
+                </datamodel>
+                <state id="p" initial="a">
+                    <history id="h">
+                        <transition target="a"/>
+                    </history>
+                    <state id="a">
+                        <onentry><assign location="path" expr="path + 'a'"/></onentry>
+                        <transition event="next" target="b"/>
+                    </state>
+                    <state id="b">
+                        <onentry><assign location="path" expr="path + 'b'"/></onentry>
+                        <transition event="next" target="a"/>
+                    </state>
+                    <transition event="out" target="q"/>
+                </state>
+                <state id="q">
+                    <onentry><assign location="count" expr="count + 1"/></onentry>
+                    <transition event="back" cond="count &lt; 4" target="h"/>
+                    <transition event="back" cond="path === 'abbabbba'" target="done"/>
+                    <transition event="back" target="fail"/>
+                </state>
+                <final id="done"/>
+                <final id="fail"/>
+            </scxml>""";
+
+    static final List<String> EVENTS = List.of(
+            "next", "out", "back", "next", "next", "out", "back", "out", "back", "next", "out", "back");
+
+    @Test
+    void same_selections(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        Log.setLogFile(tempDir.resolve("selection.log"), false);
+        try {
+            Path file = tempDir.resolve("selection.scxml");
+            Files.writeString(file, SCXML);
+            String url = file.toUri().toString();
+
+            Fsm uncached = run("0", url);
+            Assertions.assertFalse(uncached.selection_cache.enabled());
+            Assertions.assertEquals(0, uncached.selection_cache.getHits() + uncached.selection_cache.getMisses());
+
+            Fsm cached = run("64", url);
+            Assertions.assertTrue(cached.selection_cache.enabled());
+            Assertions.assertTrue(cached.selection_cache.getHits() > 0, cached.selection_cache.toString());
+        } finally {
+            Log.releaseStream();
+        }
+    }
+
+    /**
+     * The option is applied to models that the executor loads, a model of the caller keeps its setting.
+     */
+    @Test
+    void keeps_setting_of_caller_model(@TempDir Path tempDir) throws Exception {
+        ECMAScriptDatamodel.register();
+        Log.setLogFile(tempDir.resolve("selection.log"), false);
+        try {
+            FsmExecutor executor = new FsmExecutor(false);
+            executor.set_global_options_from_arguments(Map.of(FsmExecutor.SELECTION_CACHE_OPTION, "64"));
+            Fsm model = new ScxmlReader().parse_from_xml(SCXML);
+            ScxmlSession session = model.start_fsm_with_data(new ActionWrapper(), executor, List.of(), TraceMode.NONE);
+            send_events(executor, session);
+            Assertions.assertFalse(model.selection_cache.enabled());
+        } finally {
+            Log.releaseStream();
+        }
+    }
+
+    private static Fsm run(String selection_cache, String url) throws InterruptedException {
+        final Fsm[] loaded = new Fsm[1];
+        FsmExecutor executor = new FsmExecutor(false) {
+            @Override
+            protected Fsm load_model(String url) throws Exception {
+                return loaded[0] = super.load_model(url);
+            }
+        };
+        executor.set_global_options_from_arguments(Map.of(FsmExecutor.SELECTION_CACHE_OPTION, selection_cache));
+        ScxmlSession session = executor.execute_with_data(url, new ActionWrapper(), List.of(), null, "", TraceMode.NONE);
+        send_events(executor, session);
+        return loaded[0];
+    }
+
+    private static void send_events(FsmExecutor executor, ScxmlSession session) throws InterruptedException {
+        for (String event : EVENTS) {
+            executor.send_to_session(session.session_id, Event.new_simple(event));
+        }
+        Assertions.assertTrue(session.join(10000), "Session not finished in time");
+        Assertions.assertEquals(List.of("done"), session.global_data.final_configuration);
+    }
+}
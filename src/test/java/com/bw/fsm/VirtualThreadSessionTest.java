@@ -0,0 +1,93 @@
+package com.bw.fsm;
+
+import com.bw.fsm.actions.ActionWrapper;
+import com.bw.fsm.datamodel.null_datamodel.NullDatamodel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Starts a large number of idle sessions on virtual threads and measures the heap used per session.
+ */
+class VirtualThreadSessionTest {
+
+    static final String SCXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <scxml xmlns="http://www.w3.org/2005/07/scxml" initial="idle" version="1.0" datamodel="null">
+                <state id="idle">
+                    <transition event="stop" target="end"/>
+                </state>
+                <final id="end"/>
+            </scxml>""";
+
+    static final int SESSIONS = 10000;
+
+    /**
+     * Loose upper bound of the heap used by an idle session.
+     */
+    static final long MAX_BYTES_PER_SESSION = 32 * 1024;
+
+    @Test
+    void idle_sessions(@TempDir Path tempDir) throws IOException, InterruptedException {
+        NullDatamodel.register();
+
+        Fsm fsm = new ScxmlReader().parse_from_xml(SCXML);
+        FsmExecutor executor = new FsmExecutor(false);
+        executor.set_execution_mode(ExecutionMode.VIRTUAL_THREAD);
+
+        // The sessions take over the log stream of this thread.
+        Log.setLogFile(tempDir.resolve("sessions.log"), false);
+        ArrayList<ScxmlSession> sessions = new ArrayList<>(SESSIONS);
+        try {
+            long usedBefore = used_heap();
+            ActionWrapper actions = new ActionWrapper();
+            for (int i = 0; i < SESSIONS; ++i) {
+                sessions.add(fsm.start_fsm(actions, executor));
+            }
+            wait_for_idle(sessions);
+            long bytesPerSession = (used_heap() - usedBefore) / SESSIONS;
+
+            System.out.printf("%d idle sessions, %d bytes per session%n", SESSIONS, bytesPerSession);
+
+            for (ScxmlSession session : sessions) {
+                Assertions.assertTrue(session.thread.isVirtual());
+            }
+            Assertions.assertTrue(bytesPerSession <= MAX_BYTES_PER_SESSION,
+                    String.format("%d bytes used per session", bytesPerSession));
+        } finally {
+            for (ScxmlSession session : sessions) {
+                session.sender.enqueue(Event.new_simple("stop"));
+            }
+            for (ScxmlSession session : sessions) {
+                session.thread.join(10000);
+            }
+            Log.releaseStream();
+        }
+        for (ScxmlSession session : sessions) {
+            Assertions.assertTrue(session.global_data.final_configuration.contains("end"));
+        }
+    }
+
+    static long used_heap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static void wait_for_idle(java.util.List<ScxmlSession> sessions) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 60000;
+        for (ScxmlSession session : sessions) {
+            while (!(session.sender.data.isEmpty() && session.thread.getState() == Thread.State.WAITING)) {
+                Assertions.assertTrue(System.currentTimeMillis() < timeout, "Sessions are not idle in time");
+                Thread.sleep(1);
+            }
+        }
+    }
+}
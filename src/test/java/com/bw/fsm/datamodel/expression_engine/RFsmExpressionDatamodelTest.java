@@ -1,7 +1,9 @@
 package com.bw.fsm.datamodel.expression_engine;
 
 import com.bw.fsm.Data;
+import com.bw.fsm.Fsm;
 import com.bw.fsm.FsmExecutor;
+import com.bw.fsm.ScxmlReader;
 import com.bw.fsm.ScxmlSession;
 import com.bw.fsm.actions.Action;
 import com.bw.fsm.actions.ActionWrapper;
@@ -235,4 +237,34 @@ class RFsmExpressionDatamodelTest {
         assertEquals(testValues.length, testAction.nextIdx);
 
     }
+
+    @Test
+    public void expressions_are_parsed_once() throws Exception {
+        RFsmExpressionDatamodel.register();
+        NullDatamodel.register();
+
+        int[] testValues = new int[]{1, 2, 3, 4, 5, 99};
+        var executor = new FsmExecutor(false);
+        URL source = RFsmExpressionDatamodelTest.class.getResource("/scxml_rexp_test.scxml");
+        Fsm fsm = new ScxmlReader().parse_from_url(source);
+
+        Map<Integer, Object> compiled = null;
+        for (int run = 0; run < 2; ++run) {
+            var actions = new ActionWrapper();
+            var testAction = new MyTestAction(testValues);
+            actions.add_action("test", testAction);
+            ScxmlSession session = fsm.start_fsm_with_data(actions, executor, List.of(), TraceMode.NONE);
+            assertTrue(session.join(2000), "FSM not finished in time");
+            assertEquals(testValues.length, testAction.nextIdx);
+            if (compiled == null) {
+                compiled = new HashMap<>(fsm.compiled_scripts);
+                assertFalse(compiled.isEmpty());
+            }
+        }
+        // The second session re-used the expressions of the first one.
+        assertEquals(compiled.size(), fsm.compiled_scripts.size());
+        for (var entry : compiled.entrySet()) {
+            assertSame(entry.getValue(), fsm.compiled_scripts.get(entry.getKey()));
+        }
+    }
 }